@@ -6,20 +6,28 @@ import java.awt.Container;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
 import java.awt.GridLayout;
+import java.awt.Image;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.image.BufferedImage;
 import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
 
+import net.tapire_solutions.animationedit.atlasexport.AtlasExporter;
+import net.tapire_solutions.animationedit.atlasexport.ExportCache;
 import net.tapire_solutions.animationedit.drawingtools.BucketDrawingTool;
 import net.tapire_solutions.animationedit.drawingtools.ColorToleranceSelector;
 import net.tapire_solutions.animationedit.drawingtools.CurrentBrushSelector;
@@ -27,6 +35,8 @@ import net.tapire_solutions.animationedit.drawingtools.CurrentColorSelector;
 import net.tapire_solutions.animationedit.drawingtools.DrawingTool;
 import net.tapire_solutions.animationedit.drawingtools.DrawingToolSelector;
 import net.tapire_solutions.animationedit.drawingtools.EraseDrawingTool;
+import net.tapire_solutions.animationedit.drawingtools.FillModeSelector;
+import net.tapire_solutions.animationedit.drawingtools.FrameImageProvider;
 import net.tapire_solutions.animationedit.drawingtools.LineDrawingTool;
 import net.tapire_solutions.animationedit.drawingtools.PenDrawingTool;
 import net.tapire_solutions.animationedit.drawingtools.PickupColorDrawingTool;
@@ -39,6 +49,11 @@ import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
 import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameSequence;
 import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameSequenceFile;
 import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameSequenceInfoProvider;
+import net.tapire_solutions.animationedit.animationframesequence.PlaybackGraph;
+import net.tapire_solutions.animationedit.graphicsutils.BackgroundImageLoader.ImageLoadListener;
+import net.tapire_solutions.animationedit.graphicsutils.CompatibleImageCreator;
+import net.tapire_solutions.animationedit.graphicsutils.HistoryMemoryBudget;
+import net.tapire_solutions.animationedit.graphicsutils.ImageSaver.ImageSaveListener;
 import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
 import net.tapire_solutions.animationedit.graphicsutils.ImageStore.ImageStoreMaxSizeChangedListener;
 
@@ -51,10 +66,14 @@ public class AnimationEditApplication extends JFrame
 	implements ImageStoreProvider,
 				AnimationFrameSequenceInfoProvider,
 				ImageStoreMaxSizeChangedListener,
+				ImageLoadListener,
+				ImageSaveListener,
 				DrawingToolSelector,
 				CurrentColorSelector, 
 				CurrentBrushSelector,
 				ColorToleranceSelector,
+				FillModeSelector,
+				FrameImageProvider,
 				DirectoryChangedListener,
 				FrameListButtonBarListener
 	{
@@ -72,6 +91,7 @@ public class AnimationEditApplication extends JFrame
 	private CurrentDocument currentDocument;
 	private DirectoryChangeWatcher directoryChangeWatcher;
 	private AnimationEditClipBoard clipBoard;
+	private HistoryMemoryBudget historyMemoryBudget;
 	
 	/**
 	 * Setup app.
@@ -83,6 +103,8 @@ public class AnimationEditApplication extends JFrame
 		super("AnimationEdit");
 
 		config = new ApplicationConfig(configFilePath);	
+		CompatibleImageCreator.setMode(config.imageCreationMode);
+		historyMemoryBudget = new HistoryMemoryBudget(config.undoHistoryMemoryMB * 1024L * 1024L);
 
 		directoryChangeWatcher = new DirectoryChangeWatcher(this, ".png");		
 		currentDocument = new CurrentDocument(config.projectPath);
@@ -157,7 +179,7 @@ public class AnimationEditApplication extends JFrame
 				new PenDrawingTool(this, this), 
 				new EraseDrawingTool(this), 
 				new PickupColorDrawingTool(this),
-				new BucketDrawingTool(this, this), 
+				new BucketDrawingTool(this, this, this, this), 
 				new LineDrawingTool(this, this),
 				new SelectRectDrawingTool(clipBoard),
 				brushPropertiesMenu, 
@@ -251,6 +273,7 @@ public class AnimationEditApplication extends JFrame
 				animationFrameSelector.getSelected().setEventY(intValue);
 			}
 		}
+		animationSequence.animationFrameChanged(animationFrameSelector.getSelected());
 	}
 
 	private void newFrameUseCurrentImage() {
@@ -315,6 +338,27 @@ public class AnimationEditApplication extends JFrame
 		animationFrameSelector.setAnimationFrames(animationSequence.getAnimationFrames());
 	}
 
+	/**
+	 * Offer to make frames whose images are identical use the same image.
+	 */
+	private void relinkIdenticalImages() {
+		List<List<String>> identicalImages = animationSequence.findIdenticalImages();
+		if (identicalImages.isEmpty()) {
+			JOptionPane.showMessageDialog(null, "No frames have identical images.");
+			return;
+		}
+		String message = "These images are identical:\n";
+		for (List<String> group : identicalImages) {
+			message += group.get(0) + ": " + group.subList(1, group.size()) + "\n";
+		}
+		message += "Make their frames use the first image? The image files are kept.";
+		if (JOptionPane.showConfirmDialog(null, message, "Relink frames", JOptionPane.YES_NO_OPTION) != JOptionPane.YES_OPTION) {
+			return;
+		}
+		int numRelinked = animationSequence.relinkImages(identicalImages);
+		System.out.println("Relinked " + numRelinked + " frames to identical images.");
+	}
+
 	private void newFrameFromWorkingDirectory() {
 		String name = JOptionPane.showInputDialog(
 				"Image for frame? \n(Should be a png image in the working directory, example \"myimage\", \"myimage.png\")",
@@ -346,6 +390,10 @@ public class AnimationEditApplication extends JFrame
 				animationFrameView.undo();
 			}
 			
+			if (event.getSource() == menu.redoItem) {
+				animationFrameView.redo();
+			}
+			
 			if (event.getSource() == menu.copyItem) {
 				clipBoard.copySelectedImage();
 			}
@@ -408,31 +456,34 @@ public class AnimationEditApplication extends JFrame
 				animationSequence.moveAnimationFrameLater(animationFrameSelector.getSelected());
 				animationFrameSelector.setAnimationFrames(animationSequence.getAnimationFrames());
 			}
+			if (event.getSource() == menu.relinkIdenticalImagesItem) {
+				relinkIdenticalImages();
+			}
 			
 			if (event.getSource() == menu.preview1FpsItem) {
-				animationPreview.setUpdateSpeed(100, 1000);
+				animationPreview.setTicsPerSecond(1);
 			}
 			if (event.getSource() == menu.preview2FpsItem) {
-				animationPreview.setUpdateSpeed(100, 1000/2);
+				animationPreview.setTicsPerSecond(2);
 			}
 			if (event.getSource() == menu.preview10FpsItem) {
-				animationPreview.setUpdateSpeed(100, 1000/10);
+				animationPreview.setTicsPerSecond(10);
 			}
 			if (event.getSource() == menu.preview30FpsItem) {
-				animationPreview.setUpdateSpeed(100, 1000/30);
+				animationPreview.setTicsPerSecond(30);
 			}
 			if (event.getSource() == menu.preview60FpsItem) {
-				animationPreview.setUpdateSpeed(100, 1000/60);
+				animationPreview.setTicsPerSecond(60);
 			}
 			if (event.getSource() == menu.previewStopItem) {
-				animationPreview.setUpdateSpeed(100000000, 100000000);
+				animationPreview.stop();
 			}
 			if (event.getSource() == menu.previewNextFrameItem) {
-				animationPreview.setUpdateSpeed(100000000, 100000000);
+				animationPreview.stop();
 				animationPreview.nextFrame();
 			}
 			if (event.getSource() == menu.previewPreviousFrameItem) {
-				animationPreview.setUpdateSpeed(100000000, 100000000);
+				animationPreview.stop();
 				animationPreview.previousFrame();
 			}
 			
@@ -498,9 +549,8 @@ public class AnimationEditApplication extends JFrame
 				String path = currentDocument.saveDocument(true, true);
 				animationSequence.writeToFile(path);
 				if (path != null) {
-					animationSequence.getImageStore().writeModifiedImagesToDisk();
-					setTitle("AnimationEdit - " + currentDocument.getDocumentTitle()
-							+ " | Last save: " + new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(new Date()));
+					setTitle("AnimationEdit - " + currentDocument.getDocumentTitle() + " | Saving...");
+					animationSequence.getImageStore().writeModifiedImagesToDisk(AnimationEditApplication.this);
 				}
 			}
 
@@ -526,6 +576,10 @@ public class AnimationEditApplication extends JFrame
 				animationSequence.getImageStore().reloadAll();
 			}
 
+			if (event.getSource() == menu.exportAtlasItem) {
+				exportAtlas();
+			}
+
 			if (event.getSource() == menu.quitItem) {
 				System.exit(0);
 			}
@@ -545,21 +599,77 @@ public class AnimationEditApplication extends JFrame
 	}
 	
 	@Override
-	public void onDirectoryChanged(ArrayList<String> changedFiles) {
-		for (String fileName : changedFiles) {
-			animationSequence.getImageStore().reloadImage(fileName);
-		}
+	public void onDirectoryChanged(final ArrayList<String> changedFiles) {
+		// called on the watcher thread, the image store is used from the EDT
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (animationSequence == null) return;
+				for (String fileName : changedFiles) {
+					animationSequence.getImageStore().reloadImage(fileName);
+				}
+			}
+		});
+	}
+	
+	
+	@Override
+	public void onImagesSaved(final int numSaved, final int numFailed, long millis) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				String status = " | Last save: " + new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(new Date());
+				if (numFailed > 0) {
+					status = " | Save failed for " + numFailed + " images";
+				}
+				setTitle("AnimationEdit - " + currentDocument.getDocumentTitle() + status);
+			}
+		});
 	}
 	
 
+	/**
+	 * Export the sequence as an atlas to the export path, named as the
+	 * sequence file. Exports the images as edited, saved or not, so only
+	 * encoded pages are taken from the export cache.
+	 */
+	private void exportAtlas() {
+		if (animationSequence == null || !currentDocument.hasOpenDocument()) return;
+		String atlasName = currentDocument.getOpenDocument().getName();
+		if (atlasName.endsWith(".xml")) {
+			atlasName = atlasName.substring(0, atlasName.length() - ".xml".length());
+		}
+		File exportDirectory = new File(config.exportPath);
+		AtlasExporter exporter = new AtlasExporter(config.atlasMaxPageSize, config.atlasPadding);
+		exporter.setCompressionLevel(config.pngCompressionLevel);
+		exporter.setTrim(config.atlasTrim);
+		ExportCache cache = new ExportCache(exportDirectory);
+		exporter.setCache(cache);
+		boolean wasExported = exporter.export(animationSequence.getAnimationFrames(), animationSequence.getImageStore(), exportDirectory, atlasName);
+		System.out.println("Atlas export " + cache.getStatistics() + ".");
+		if (wasExported) {
+			setTitle("AnimationEdit - " + currentDocument.getDocumentTitle()
+					+ " | Exported atlas to " + exportDirectory.getAbsolutePath());
+		} else {
+			JOptionPane.showMessageDialog(null, "Couldn't export atlas " + atlasName + ", see log.", "Error", JOptionPane.ERROR_MESSAGE);
+		}
+	}
+
 	private AnimationFrameSequence loadAnimationSequence(String path) {
 		if (path == null) return null;
+		if (this.animationSequence != null) {
+			this.animationSequence.getImageStore().close();
+		}
 		File file = new File(path);
 		String dir = file.getParent();
-		AnimationFrameSequence animationSequence = new AnimationFrameSequence(dir, path);
+		AnimationFrameSequence animationSequence = new AnimationFrameSequence(dir, path, historyMemoryBudget, config.useUndoJournal);
+		animationSequence.getImageStore().setMaxCachedImageBytes(config.imageCacheMemoryMB * 1024L * 1024L);
+		animationSequence.getImageStore().setPngCompressionLevel(config.pngCompressionLevel);
 		animationSequence.addChangeListener(animationFrameSelector);
 		animationFrameSelector.setAnimationFrames(animationSequence.getAnimationFrames());
 		animationSequence.getImageStore().addMaxSizeChangedListener(this);
+		animationSequence.getImageStore().addImageLoadListener(this);
+		animationSequence.preloadImages();
 		if (currentDocument.hasOpenDocument()) {
 			directoryChangeWatcher.setCurrentDirectory(currentDocument.getParentDirectoryOfOpenDocument());
 		}
@@ -592,8 +702,18 @@ public class AnimationEditApplication extends JFrame
 		}
 		
 		try {
-			AnimationEditApplication app = new AnimationEditApplication(configFile, animationSequenceFile);
+			final AnimationEditApplication app = new AnimationEditApplication(configFile, animationSequenceFile);
 			app.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+			// don't let quitting cut off images that are still being saved
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					ImageStore imageStore = app.getImageStore();
+					if (imageStore != null) {
+						imageStore.waitForSaves();
+					}
+				}
+			});
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -637,6 +757,13 @@ public class AnimationEditApplication extends JFrame
 	}
 
 
+	@Override
+	public PlaybackGraph getPlaybackGraph() {
+		if (animationSequence == null) return PlaybackGraph.compile(null);
+		return animationSequence.getPlaybackGraph();
+	}
+
+
 	@Override
 	public int getSelectedAnimationFrameIndex() {
 		return animationFrameSelector.getSelectedIndex();
@@ -649,6 +776,37 @@ public class AnimationEditApplication extends JFrame
 	}
 
 
+	@Override
+	public void onImageLoaded(String imageName, final int numLoaded, final int numRequested) {
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (currentDocument.hasOpenDocument()) {
+					setTitle("AnimationEdit - " + currentDocument.getDocumentTitle()
+							+ " | Loading images " + numLoaded + "/" + numRequested + "...");
+				}
+				animationFrameView.repaint();
+				animationPreview.repaint();
+			}
+		});
+	}
+
+
+	@Override
+	public void onAllImagesLoaded(final int numLoaded, final long millis) {
+		// each loaded image has already triggered a repaint
+		SwingUtilities.invokeLater(new Runnable() {
+			@Override
+			public void run() {
+				if (currentDocument.hasOpenDocument()) {
+					setTitle("AnimationEdit - " + currentDocument.getDocumentTitle()
+							+ " | Loaded " + numLoaded + " images in " + millis + " ms");
+				}
+			}
+		});
+	}
+
+
 	@Override
 	public DrawingTool getTool() {
 		return drawingToolSelectionMenu.getTool();
@@ -670,6 +828,12 @@ public class AnimationEditApplication extends JFrame
 		return brushPropertiesMenu.isSmooth();
 	}
 
+
+	@Override
+	public boolean getBrushIsRound() {
+		return brushPropertiesMenu.isRound();
+	}
+
 	@Override
 	public float getBrushWidth() {
 		return brushPropertiesMenu.getBrushSize();
@@ -712,4 +876,36 @@ public class AnimationEditApplication extends JFrame
 	public float getColorTolerance() {
 		return colorToleranePropertiesMenu.getColorTolerance();
 	}
+
+	@Override
+	public FillMode getFillMode() {
+		return colorToleranePropertiesMenu.getFillMode();
+	}
+
+	@Override
+	public Collection<String> getFrameImageNames() {
+		LinkedHashSet<String> imageNames = new LinkedHashSet<String>();
+		if (animationSequence != null) {
+			for (AnimationFrame frame : animationSequence.getAnimationFrames()) {
+				imageNames.add(frame.getImage());
+			}
+		}
+		return imageNames;
+	}
+
+	@Override
+	public BufferedImage getFrameImage(String imageName) {
+		if (animationSequence == null) return null;
+		Image image = animationSequence.getImageStore().getImage(imageName);
+		if (image instanceof BufferedImage) {
+			return (BufferedImage)image;
+		}
+		return null;
+	}
+
+	@Override
+	public void setFrameImageModified(String imageName) {
+		if (animationSequence == null) return;
+		animationSequence.getImageStore().setImageWasModified(imageName);
+	}
 }
\ No newline at end of file
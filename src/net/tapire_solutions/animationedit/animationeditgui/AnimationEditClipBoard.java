@@ -55,7 +55,9 @@ public class AnimationEditClipBoard implements ClipboardOwner, SelectRectListene
 	
 	private BufferedImage createSubImage(BufferedImage source, int x, int y, int width, int height) {
 		BufferedImage subImage = CompatibleImageCreator.createCompatibleImage(width, height);
-		subImage.createGraphics().drawImage(source, 0, 0, width, height, x, y, x + width, y + height, null);
+		Graphics2D g = subImage.createGraphics();
+		g.drawImage(source, 0, 0, width, height, x, y, x + width, y + height, null);
+		g.dispose();
 		return subImage;
 	}
 
@@ -66,7 +68,7 @@ public class AnimationEditClipBoard implements ClipboardOwner, SelectRectListene
 		Graphics2D g = image.createGraphics();
 		g.setComposite(AlphaComposite.Clear);
 		g.fillRect(selectX, selectY, selectW, selectH);
-		g.setComposite(AlphaComposite.SrcOver);
+		g.dispose();
 	}
 	
 	public void deleteSelectedImage() {
@@ -168,7 +170,9 @@ public class AnimationEditClipBoard implements ClipboardOwner, SelectRectListene
 		BufferedImage frameImage = getCurrentFrameBufferedImage();
 		if (frameImage == null)
 			return;
-		frameImage.createGraphics().drawImage(floatingLayer.getImage(), floatingLayer.getPosX(), floatingLayer.getPosY(), null);
+		Graphics2D g = frameImage.createGraphics();
+		g.drawImage(floatingLayer.getImage(), floatingLayer.getPosX(), floatingLayer.getPosY(), null);
+		g.dispose();
 		floatingLayer = null;
 	}
 
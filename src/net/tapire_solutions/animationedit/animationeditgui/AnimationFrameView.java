@@ -1,9 +1,11 @@
 package net.tapire_solutions.animationedit.animationeditgui;
 
-import net.tapire_solutions.animationedit.graphicsutils.CompatibleImageCreator;
 import net.tapire_solutions.animationedit.graphicsutils.GeometryUtil;
 import net.tapire_solutions.animationedit.graphicsutils.GridDrawingUtil;
 import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
+import net.tapire_solutions.animationedit.graphicsutils.OffscreenBuffer;
+import net.tapire_solutions.animationedit.graphicsutils.ScaledTileCache;
+import net.tapire_solutions.animationedit.graphicsutils.ScaledTileCache.TileRenderer;
 
 import java.awt.Color;
 import java.awt.Dimension;
@@ -16,7 +18,8 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.image.BufferedImage;
-import java.awt.image.RescaleOp;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.JPanel;
 import javax.swing.Scrollable;
@@ -34,9 +37,9 @@ import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameS
  */
 public class AnimationFrameView
         extends JPanel
-        implements MouseListener, MouseMotionListener, SelectedAnimationFrameChangeListener, Scrollable {
+        implements MouseListener, MouseMotionListener, SelectedAnimationFrameChangeListener, Scrollable, TileRenderer {
 	
-	private Image offscreenBufferImage;
+	private OffscreenBuffer offscreenBuffer;
     private float scale = 1.0f;
     private int numOnionSkin = 0;
     private ImageStoreProvider imageStoreProvider;
@@ -46,6 +49,14 @@ public class AnimationFrameView
     private AnimationEditClipBoard clipBoard;
 	private int maxImageSizeX = 0;
 	private int maxImageSizeY = 0;
+	// area of the current frame changed since the mouse was pressed
+	private Rectangle changedArea = null;
+	private OnionSkinLayer onionSkinLayer = new OnionSkinLayer();
+	// zoomed view, only redrawn where it changed
+	private ScaledTileCache tileCache = new ScaledTileCache(256, 96);
+	// what the cached tiles show, see getDrawnState() and getEditedState()
+	private List<Object> drawnState = null;
+	private List<Object> drawnEditedState = null;
     
     public AnimationFrameView(ImageStoreProvider imageStoreProvider, 
     		AnimationFrameSequenceInfoProvider animationFrameSequenceInfoProvider, 
@@ -57,7 +68,8 @@ public class AnimationFrameView
         this.drawingToolSelector = drawingToolSelector;
         this.transparentAlphaColor = transparentAlphaColor;
         this.clipBoard = clipBoard;
-        offscreenBufferImage = CompatibleImageCreator.createCompatibleImage(1000, 1000); // TODO: magic numbers
+        setBackground(transparentAlphaColor);
+        offscreenBuffer = new OffscreenBuffer(1, 1);
     }
     
     public void setOnionSkinDepth(int depth) {
@@ -66,34 +78,46 @@ public class AnimationFrameView
 
 	@Override
 	public void mousePressed(MouseEvent e) {
+		checkDrawnState();
 		AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
 		if (frame != null) {
 			int mouseX = screenToModelCoord(e.getX()) - frame.getOffsetX();
 			int mouseY = screenToModelCoord(e.getY()) - frame.getOffsetY();
+			Rectangle overlayArea = getOverlayArea();
 			BufferedImage image = getCurrentFrameBufferedImage();
+			changedArea = null;
 			if (image != null) {
-				drawingToolSelector.getTool().onMouseDown(image, mouseX, mouseY);
-				repaint();
+				changedArea = drawingToolSelector.getTool().onMouseDown(image, mouseX, mouseY);
 			}
 			if (clipBoard.hasFloatingLayer()) {
 				FloatingLayer floatingLayer = clipBoard.getFloatingLayer();
 				if (!GeometryUtil.isPointInRect(mouseX, mouseY, floatingLayer.getPosX(),
 						floatingLayer.getPosY(), floatingLayer.getImage().getWidth(), floatingLayer.getImage().getHeight())) {
+					changedArea = GeometryUtil.union(changedArea, new Rectangle(floatingLayer.getPosX(), floatingLayer.getPosY(), 
+							floatingLayer.getImage().getWidth(), floatingLayer.getImage().getHeight()));
 					clipBoard.anchorFloatingLayer();
-					repaint();
 				}
 			}
+			repaintFrameArea(GeometryUtil.union(GeometryUtil.union(overlayArea, getOverlayArea()), changedArea));
 		}
 		e.consume();
 	}
 
     @Override
     public void mouseReleased(MouseEvent e) {
+		checkDrawnState();
+		AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
     	BufferedImage image = getCurrentFrameBufferedImage();
-		if (image != null) {
-			drawingToolSelector.getTool().onMouseRelease(image, screenToModelCoord(e.getX()), screenToModelCoord(e.getY()));
-			setCurrentFrameImageModified();
-			repaint();
+		if (frame != null && image != null) {
+			Rectangle overlayArea = getOverlayArea();
+			Rectangle releaseArea = drawingToolSelector.getTool().onMouseRelease(image, 
+					screenToModelCoord(e.getX()) - frame.getOffsetX(), screenToModelCoord(e.getY()) - frame.getOffsetY());
+			changedArea = GeometryUtil.union(changedArea, releaseArea);
+			if (changedArea != null) {
+				setCurrentFrameImageModified(changedArea);
+				changedArea = null;
+			}
+			repaintFrameArea(GeometryUtil.union(GeometryUtil.union(overlayArea, getOverlayArea()), releaseArea));
 		}
         e.consume();
     }
@@ -108,7 +132,6 @@ public class AnimationFrameView
 
     @Override
     public void mouseClicked(MouseEvent e) {
-        repaint();
     }
 
     // implement mousemovelistener
@@ -122,14 +145,17 @@ public class AnimationFrameView
 	@Override
 	public void mouseDragged(MouseEvent e) {
 		// called during motion with buttons down
+		checkDrawnState();
 		AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
 		if (frame != null) {
 			int mouseX = screenToModelCoord(e.getX()) - frame.getOffsetX();
 			int mouseY = screenToModelCoord(e.getY()) - frame.getOffsetY();
+			Rectangle overlayArea = getOverlayArea();
+			Rectangle dragArea = null;
 			BufferedImage image = getCurrentFrameBufferedImage();
 			if (image != null) {
-				drawingToolSelector.getTool().onMouseMoveWhileDown(image, mouseX, mouseY);
-				repaint();
+				dragArea = drawingToolSelector.getTool().onMouseMoveWhileDown(image, mouseX, mouseY);
+				changedArea = GeometryUtil.union(changedArea, dragArea);
 			}
 			if (clipBoard.hasFloatingLayer()) {
 				FloatingLayer floatingLayer = clipBoard.getFloatingLayer();
@@ -137,20 +163,138 @@ public class AnimationFrameView
 						floatingLayer.getPosX(), floatingLayer.getPosY(), 
 						floatingLayer.getImage().getWidth(), floatingLayer.getImage().getHeight())) {
 					floatingLayer.setCenter(mouseX, mouseY);
-					repaint();
 				}
 			}
+			repaintFrameArea(GeometryUtil.union(GeometryUtil.union(overlayArea, getOverlayArea()), dragArea));
 		}
 		e.consume();
 	}
 	
 	
-	private void setCurrentFrameImageModified() {
+	/**
+	 * @return Area of the current frame covered by the selection and floating layer, 
+	 * including their outlines, or null if there are none.
+	 */
+	private Rectangle getOverlayArea() {
+		Rectangle area = null;
+		if (clipBoard.hasSelection()) {
+			area = new Rectangle(clipBoard.getSelectionX(), clipBoard.getSelectionY(), 
+					clipBoard.getSelectionWidth() + 1, clipBoard.getSelectionHeight() + 1);
+		}
+		if (clipBoard.hasFloatingLayer()) {
+			FloatingLayer layer = clipBoard.getFloatingLayer();
+			area = GeometryUtil.union(area, new Rectangle(layer.getPosX(), layer.getPosY(), 
+					layer.getImage().getWidth() + 1, layer.getImage().getHeight() + 1));
+		}
+		return area;
+	}
+	
+	
+	/**
+	 * Repaint the part of the view showing an area of the current frame,
+	 * after it was changed by mouse input.
+	 * @param area Area in image coordinates, or null if nothing changed.
+	 */
+	private void repaintFrameArea(Rectangle area) {
+		AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
+		if (area != null && frame != null) {
+			Rectangle modelArea = new Rectangle(area.x + frame.getOffsetX(), area.y + frame.getOffsetY(), 
+					area.width, area.height);
+			tileCache.invalidate(modelArea);
+			// one extra pixel on each side for rounding at fractional zoom levels
+			int screenLeft = modelToScreenCoord(modelArea.x) - 1;
+			int screenTop = modelToScreenCoord(modelArea.y) - 1;
+			repaint(screenLeft, screenTop, 
+					(int)Math.ceil((modelArea.x + modelArea.width) * scale) + 1 - screenLeft,
+					(int)Math.ceil((modelArea.y + modelArea.height) * scale) + 1 - screenTop);
+		}
+		// the other tiles are still right, unless something else changed too
+		checkDrawnState(getDrawnState());
+		drawnEditedState = getEditedState();
+	}
+	
+	
+	/**
+	 * @return Everything the view shows that mouse input doesn't change, 
+	 * compared to find out if all tiles must be redrawn.
+	 */
+	private List<Object> getDrawnState() {
+		List<Object> state = new ArrayList<Object>();
+		ImageStore imageStore = imageStoreProvider.getImageStore();
+		state.add(imageStore);
+		state.add(maxImageSizeX);
+		state.add(maxImageSizeY);
+		state.add(numOnionSkin);
+		if (imageStore == null) return state;
+		onionSkinLayer.update(imageStore, animationFrameSequenceInfoProvider, numOnionSkin, 
+				Math.min(maxImageSizeX, offscreenBuffer.getWidth()), 
+				Math.min(maxImageSizeY, offscreenBuffer.getHeight()));
+		state.add(onionSkinLayer.getVersion());
+		AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
+		if (frame != null) {
+			state.add(frame.getImage());
+			state.add(frame.getOffsetX());
+			state.add(frame.getOffsetY());
+			state.add(frame.getEvent());
+			state.add(frame.getEventX());
+			state.add(frame.getEventY());
+		}
+		return state;
+	}
+	
+	
+	/**
+	 * @return What the view shows that mouse input changes. Mouse handlers 
+	 * redraw the tiles they changed, other changes redraw all tiles.
+	 */
+	private List<Object> getEditedState() {
+		List<Object> state = new ArrayList<Object>();
+		ImageStore imageStore = imageStoreProvider.getImageStore();
+		AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
+		if (imageStore != null && frame != null) {
+			state.add(imageStore.getImageVersion(frame.getImage()));
+		}
+		if (clipBoard.hasSelection()) {
+			state.add(new Rectangle(clipBoard.getSelectionX(), clipBoard.getSelectionY(), 
+					clipBoard.getSelectionWidth(), clipBoard.getSelectionHeight()));
+		}
+		if (clipBoard.hasFloatingLayer()) {
+			FloatingLayer layer = clipBoard.getFloatingLayer();
+			state.add(layer);
+			state.add(layer.getPosX());
+			state.add(layer.getPosY());
+		}
+		return state;
+	}
+	
+	
+	private void checkDrawnState(List<Object> state) {
+		if (!state.equals(drawnState)) {
+			tileCache.invalidateAll();
+			drawnState = state;
+		}
+	}
+	
+	
+	/**
+	 * Drop all tiles if something they show changed since they were drawn.
+	 */
+	private void checkDrawnState() {
+		checkDrawnState(getDrawnState());
+		List<Object> editedState = getEditedState();
+		if (!editedState.equals(drawnEditedState)) {
+			tileCache.invalidateAll();
+			drawnEditedState = editedState;
+		}
+	}
+	
+	
+	private void setCurrentFrameImageModified(Rectangle area) {
 		ImageStore imageStore = imageStoreProvider.getImageStore();
 		if (imageStore != null) {
 			AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
 			if (frame != null) {
-				imageStoreProvider.getImageStore().setImageWasModified(frame.getImage());
+				imageStoreProvider.getImageStore().setImageWasModified(frame.getImage(), area);
 			}
 		}
 	}
@@ -202,28 +346,35 @@ public class AnimationFrameView
     public void maxSizeChanged(int maxX, int maxY) {
     	this.maxImageSizeX = maxX;
     	this.maxImageSizeY = maxY;
+    	offscreenBuffer.setSize(maxX, maxY);
     	setPreferredSize(new Dimension((int)(maxX*scale), (int)(maxY*scale)));
     	revalidate();
     }
     
     
-    private void drawImageToOffscreenBuffer(Graphics2D g, Image image, int x, int y, float alpha, String failName) {
-    	if (image != null) {
-    		if (alpha < 0.00001f) alpha = 0.01f;
-    		float[] scales = { alpha, alpha, alpha, alpha };
-			float[] offsets = new float[4];
-			RescaleOp rop = new RescaleOp(scales, offsets, null);
-			Graphics2D offsetScreenBufferGraphics = (Graphics2D)offscreenBufferImage.getGraphics();
-			offsetScreenBufferGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-			offsetScreenBufferGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-			offsetScreenBufferGraphics.drawImage((BufferedImage)image, rop, x, y);
-        } else {
-			g.setColor(transparentAlphaColor);
-			String failText = "No image with found with name " + failName;
-			g.drawString(failText,
-					getWidth()/2 - (int)g.getFontMetrics().getStringBounds(failText, g).getWidth()/2, 
-					getHeight()/2 - g.getFontMetrics().getHeight()/2);
-		}
+    private void drawMissingImageText(Graphics2D g, String imageName) {
+		g.setColor(transparentAlphaColor);
+		String failText = "No image with found with name " + imageName;
+		g.drawString(failText,
+				getWidth()/2 - (int)g.getFontMetrics().getStringBounds(failText, g).getWidth()/2, 
+				getHeight()/2 - g.getFontMetrics().getHeight()/2);
+    }
+    
+    
+    /**
+     * @return Area of the offscreen buffer shown in an area of the screen.
+     * @param screenClip Area in screen coordinates, or null for everything.
+     */
+    private Rectangle getBufferClip(Rectangle screenClip) {
+    	Rectangle bufferArea = new Rectangle(0, 0, 
+    			Math.min(maxImageSizeX, offscreenBuffer.getWidth()), 
+    			Math.min(maxImageSizeY, offscreenBuffer.getHeight()));
+    	if (screenClip == null) return bufferArea;
+    	int left = (int)Math.floor(screenClip.x / scale);
+    	int top = (int)Math.floor(screenClip.y / scale);
+    	int right = (int)Math.ceil((screenClip.x + screenClip.width) / scale);
+    	int bottom = (int)Math.ceil((screenClip.y + screenClip.height) / scale);
+    	return bufferArea.intersection(new Rectangle(left, top, right - left, bottom - top));
     }
     
     
@@ -233,40 +384,76 @@ public class AnimationFrameView
         Graphics2D g2d = (Graphics2D)g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
         g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
-        setBackground(transparentAlphaColor);
-        
-        // clear to transparent
-        Graphics2D offsetScreenBufferGraphics = (Graphics2D)offscreenBufferImage.getGraphics();
-        offsetScreenBufferGraphics.setBackground(new Color(0, 0, 0, 0));
-        offsetScreenBufferGraphics.clearRect(0, 0, offscreenBufferImage.getWidth(null), 
-        		offscreenBufferImage.getHeight(null));
 
         ImageStore imageStore = imageStoreProvider.getImageStore();
         if (imageStore == null) return;
-
-    	for (int i = -numOnionSkin; i < 0; i++) {
-		    	AnimationFrame frame = animationFrameSequenceInfoProvider.getAnimationFrame(
-		    			animationFrameSequenceInfoProvider.getSelectedAnimationFrameIndex() + i);
-	    	if (frame != null) {
-	    		Image image = imageStore.getImage(frame.getImage());
-	    		drawImageToOffscreenBuffer(g2d, image, frame.getOffsetX(), frame.getOffsetY(), 
-	    				0.3f - ((float)Math.abs(i))/(8), frame.getImage());
-	    	}
+        
+        tileCache.setScale(scale);
+        Rectangle visibleArea = getVisibleRect();
+        tileCache.setViewSize(visibleArea.width, visibleArea.height);
+        checkDrawnState();
+        Rectangle bufferArea = getBufferClip(null);
+        Rectangle screenArea = new Rectangle(0, 0, 
+        		modelToScreenCoord(bufferArea.width), modelToScreenCoord(bufferArea.height));
+        Rectangle screenClip = g.getClipBounds();
+        if (screenClip != null) {
+        	screenArea = screenArea.intersection(screenClip);
+        }
+        tileCache.draw(g, screenArea, this);
+    	for (String missingImageName : onionSkinLayer.getMissingImageNames()) {
+    		drawMissingImageText(g2d, missingImageName);
     	}
-    	for (int i = numOnionSkin; i > 0; i--) {
-	    	AnimationFrame frame = animationFrameSequenceInfoProvider.getAnimationFrame(
-	    			animationFrameSequenceInfoProvider.getSelectedAnimationFrameIndex() + i);
-	    	if (frame != null) {
-	    		Image image = imageStore.getImage(frame.getImage());
-	    		drawImageToOffscreenBuffer(g2d, image, frame.getOffsetX(), frame.getOffsetY(), 
-	    				0.3f - ((float)Math.abs(i))/(8), frame.getImage());
-	    	}
+    }
+    
+    
+    @Override
+    public void drawTile(Graphics2D g, Rectangle area) {
+        ImageStore imageStore = imageStoreProvider.getImageStore();
+        if (imageStore == null) return;
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        // only the part of the buffer that is shown in the tile is composed
+        Rectangle bufferClip = getBufferClip(area);
+        if (bufferClip.isEmpty()) return;
+        Graphics2D offsetScreenBufferGraphics = offscreenBuffer.createGraphics();
+        try {
+        	composeOffscreenBuffer(offsetScreenBufferGraphics, imageStore, bufferClip);
+        } finally {
+        	offsetScreenBufferGraphics.dispose();
+        }
+    	
+    	// buffer -> tile
+    	g.drawImage(offscreenBuffer.getImage(), 
+    			modelToScreenCoord(bufferClip.x), modelToScreenCoord(bufferClip.y), 
+				modelToScreenCoord(bufferClip.x + bufferClip.width), modelToScreenCoord(bufferClip.y + bufferClip.height), 
+				bufferClip.x, bufferClip.y, bufferClip.x + bufferClip.width, bufferClip.y + bufferClip.height, null);
+    }
+    
+    
+    /**
+     * Draw frames, onion skin, selection and floating layer in the buffer.
+     * @param bufferClip Area of the buffer to draw.
+     */
+    private void composeOffscreenBuffer(Graphics2D offsetScreenBufferGraphics, 
+    		ImageStore imageStore, Rectangle bufferClip) {
+        offsetScreenBufferGraphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        offsetScreenBufferGraphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        offsetScreenBufferGraphics.setClip(bufferClip);
+        
+        // clear to transparent
+        offsetScreenBufferGraphics.setBackground(new Color(0, 0, 0, 0));
+        offsetScreenBufferGraphics.clearRect(bufferClip.x, bufferClip.y, bufferClip.width, bufferClip.height);
+        
+    	BufferedImage onionSkinImage = onionSkinLayer.update(imageStore, animationFrameSequenceInfoProvider, numOnionSkin, 
+    			Math.min(maxImageSizeX, offscreenBuffer.getWidth()), 
+    			Math.min(maxImageSizeY, offscreenBuffer.getHeight()));
+    	if (onionSkinImage != null) {
+    		offsetScreenBufferGraphics.drawImage(onionSkinImage, 0, 0, null);
     	}
     	
     	AnimationFrame frame = animationFrameSequenceInfoProvider.getSelectedAnimationFrame();
-    	Image image = imageStore.getImage(frame.getImage());
+    	Image image = frame == null ? null : imageStore.getImage(frame.getImage());
     	if (frame != null && image != null) {
-    		drawImageToOffscreenBuffer(g2d, image, frame.getOffsetX(), frame.getOffsetY(), 1.0f, frame.getImage());
+    		offsetScreenBufferGraphics.drawImage(image, frame.getOffsetX(), frame.getOffsetY(), null);
     		GridDrawingUtil.drawBoundingBox(Color.BLUE, offsetScreenBufferGraphics, 0, 0, image.getWidth(null), 
     				image.getHeight(null));
 			if (!frame.getEvent().isEmpty()) {
@@ -284,19 +471,14 @@ public class AnimationFrameView
     	
     	if (clipBoard.hasFloatingLayer() && frame != null) {
     		FloatingLayer layer = clipBoard.getFloatingLayer();
-    		drawImageToOffscreenBuffer(g2d, layer.getImage(), 
-    				layer.getPosX() + frame.getOffsetX(), layer.getPosY() + frame.getOffsetY(), 1.0f, "-");
+    		offsetScreenBufferGraphics.drawImage(layer.getImage(), 
+    				layer.getPosX() + frame.getOffsetX(), layer.getPosY() + frame.getOffsetY(), null);
     		GridDrawingUtil.drawDashedBoundingBox(Color.GREEN, offsetScreenBufferGraphics, 
     				layer.getPosX() + frame.getOffsetX(), 
     				layer.getPosY() + frame.getOffsetY(),
     				layer.getPosX() + frame.getOffsetX() + layer.getImage().getWidth(),
     				layer.getPosY() + frame.getOffsetY() + layer.getImage().getHeight());
     	}
-    	
-    	// buffer -> screen
-    	g.drawImage(offscreenBufferImage, 0, 0, 
-				modelToScreenCoord(maxImageSizeX), modelToScreenCoord(maxImageSizeY), 
-				0, 0, maxImageSizeX, maxImageSizeY, null);
     }
 
 	@Override
@@ -339,4 +521,15 @@ public class AnimationFrameView
 			}
 		}
 	}
+
+	public void redo() {
+		ImageStore imageStore = imageStoreProvider.getImageStore();
+		if (imageStore != null) {
+			AnimationFrame frame = animationFrameSequenceInfoProvider.getAnimationFrame(
+					animationFrameSequenceInfoProvider.getSelectedAnimationFrameIndex());
+			if (frame != null) {
+				imageStore.redoLastImageModification(frame.getImage());
+			}
+		}
+	}
 }
\ No newline at end of file
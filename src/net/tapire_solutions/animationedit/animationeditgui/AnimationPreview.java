@@ -5,13 +5,20 @@ import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Image;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
 import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
 import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameSequenceInfoProvider;
+import net.tapire_solutions.animationedit.animationframesequence.PlaybackGraph;
 
 /**
  * Shows the animation played back.
@@ -19,13 +26,37 @@ import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameS
  */
 public class AnimationPreview extends JPanel {
     
-    private Timer timer;
-    private TimerTask timerTask;
+	// only touched on the event dispatch thread
     private int currentAnimationFrameIndex = 0;
     private int currentFrameTics = 1;
     
     private ImageStoreProvider imageStoreProvider;
     private AnimationFrameSequenceInfoProvider animationFrameSequenceInfoProvider;
+    
+    private final ScaledFrameCache scaledFrameCache = new ScaledFrameCache(64L * 1024 * 1024);
+    private float scaleToFit = 1.0f;
+    // sizes scaleToFit was calculated for
+    private int scaleToFitWidth = -1;
+    private int scaleToFitHeight = -1;
+    private int scaleToFitImageWidth = -1;
+    private int scaleToFitImageHeight = -1;
+    
+    private final PreviewClock clock = new PreviewClock();
+    private final ScheduledExecutorService scheduler = createScheduler();
+    private final Object timerLock = new Object();
+    private ScheduledFuture<?> nextTicTask = null;
+    // changed with the speed, so a timer that was already running when the speed changed stops
+    private int timerGeneration = 0;
+    // tics counted on the scheduler thread, not yet played on the event dispatch thread
+    private final AtomicLong pendingTics = new AtomicLong(0);
+    private final AtomicBoolean isHandOffQueued = new AtomicBoolean(false);
+    private final Runnable playPendingTics = new Runnable() {
+		@Override
+		public void run() {
+			isHandOffQueued.set(false);
+			playTics(pendingTics.getAndSet(0));
+		}
+	};
 
     public AnimationPreview(ImageStoreProvider imageStoreProvider, 
     		AnimationFrameSequenceInfoProvider animationFrameSequenceInfoProvider,
@@ -33,46 +64,90 @@ public class AnimationPreview extends JPanel {
     	this.imageStoreProvider = imageStoreProvider;
         this.animationFrameSequenceInfoProvider = animationFrameSequenceInfoProvider;
         setBackground(bgColor);
-        timer = new Timer();
-        setUpdateSpeed(1000, 100);
+        setTicsPerSecond(10);
+    }
+    
+    
+    private static ScheduledExecutorService createScheduler() {
+		return Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "PreviewClock");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
     }
 
 
-    private void onTimer() {
-    	currentFrameTics--;
-    	if (currentFrameTics <= 0) {
-    		AnimationFrame oldFrame = animationFrameSequenceInfoProvider.getAnimationFrame(currentAnimationFrameIndex);
-    		String next = "";
-        	if (oldFrame != null) {
-        		next = oldFrame.getNext();
-        	}
-        	if (next.isEmpty()) {
-        		nextFrame();
-        	} else {
-        		gotoFrame(next);
-        	}
-    		AnimationFrame newFrame = animationFrameSequenceInfoProvider.getAnimationFrame(currentAnimationFrameIndex);
-        	if (newFrame != null) {
-        		currentFrameTics = newFrame.getTics();
-        	}
+    /**
+     * Count tics that have started and wake up again when the next one starts. 
+     * Runs on the scheduler thread.
+     */
+    private void onTimer(int generation) {
+    	synchronized (timerLock) {
+    		if (generation != timerGeneration) return;
+	    	long now = System.nanoTime();
+	    	long newTics = clock.takeNewTics(now);
+	    	if (newTics > 0) {
+	    		pendingTics.addAndGet(newTics);
+	    		if (!isHandOffQueued.getAndSet(true)) {
+	    			SwingUtilities.invokeLater(playPendingTics);
+	    		}
+	    	}
+	    	scheduleNextTic(now);
     	}
     }
     
-    private void gotoFrame(String tag) {
-    	int nextIndex = animationFrameSequenceInfoProvider.getIndexOfAnimationFrameWithTag(tag);
-		if (nextIndex >= 0) {
-			currentAnimationFrameIndex = nextIndex;
-		}
-		repaint();
+    
+    private void scheduleNextTic(long now) {
+    	long nextTicNanos = clock.getNextTicNanos(now);
+    	if (nextTicNanos < 0) {
+    		nextTicTask = null;
+    		return;
+    	}
+    	final int generation = timerGeneration;
+    	nextTicTask = scheduler.schedule(new Runnable() {
+			@Override
+			public void run() {
+				onTimer(generation);
+			}
+		}, Math.max(nextTicNanos - now, 0), TimeUnit.NANOSECONDS);
     }
     
-    public void nextFrame() {
+    
+    /**
+     * Move forward a number of tics. Frames that are shorter than the tics
+     * are passed through, so a late update plays the same frames as the engine.
+     */
+    private void playTics(long tics) {
+    	PlaybackGraph graph = animationFrameSequenceInfoProvider.getPlaybackGraph();
+    	if (graph.getNumFrames() == 0) return;
+    	if (currentAnimationFrameIndex >= graph.getNumFrames()) {
+    		currentAnimationFrameIndex = 0;
+    	}
+    	int oldIndex = currentAnimationFrameIndex;
+    	while (tics >= currentFrameTics) {
+    		tics -= currentFrameTics;
+    		currentAnimationFrameIndex = graph.getNextIndex(currentAnimationFrameIndex);
+    		currentFrameTics = graph.getTics(currentAnimationFrameIndex);
+    	}
+		currentFrameTics -= tics;
+    	if (currentAnimationFrameIndex != oldIndex) {
+    		repaint();
+    	}
+    }
+    
+    private void stepForward() {
     	currentAnimationFrameIndex++; 
     	if (currentAnimationFrameIndex >= animationFrameSequenceInfoProvider.getNumAnimationFrames()) {
     		currentAnimationFrameIndex = 0;
     	}
+    }
+    
+    public void nextFrame() {
+    	stepForward();
     	repaint();
-    	
     }
     
     public void previousFrame() {
@@ -84,17 +159,47 @@ public class AnimationPreview extends JPanel {
     }
     
     
-    public void setUpdateSpeed(long delay, long millis) {
-    	if (timerTask != null) {
-    		timerTask.cancel();
+    /**
+     * Set playback speed.
+     * @param ticsPerSecond Tics per second, as in the engine. 0 stops playback.
+     */
+    public void setTicsPerSecond(int ticsPerSecond) {
+    	synchronized (timerLock) {
+	    	if (nextTicTask != null) {
+	    		nextTicTask.cancel(false);
+	    	}
+	    	timerGeneration++;
+	    	long now = System.nanoTime();
+	    	clock.setTicsPerSecond(ticsPerSecond, now);
+	    	scheduleNextTic(now);
     	}
-    	timerTask = new TimerTask() {
-			@Override
-			public void run() {
-				onTimer();
-			}
-		};
-		timer.schedule(timerTask, delay, millis);
+    }
+    
+    
+    public void stop() {
+    	setTicsPerSecond(0);
+    }
+    
+    
+    /**
+     * @return Scale that fits the largest image in the panel.
+     */
+    private float getScaleToFit(int maxImageWidth, int maxImageHeight) {
+    	if (getWidth() != scaleToFitWidth || getHeight() != scaleToFitHeight 
+    			|| maxImageWidth != scaleToFitImageWidth || maxImageHeight != scaleToFitImageHeight) {
+    		scaleToFitWidth = getWidth();
+    		scaleToFitHeight = getHeight();
+    		scaleToFitImageWidth = maxImageWidth;
+    		scaleToFitImageHeight = maxImageHeight;
+			float scaleToFitX = (float)getWidth() / (float)maxImageWidth;
+			float scaleToFitY = (float)getHeight() / (float)maxImageHeight;
+    		if (scaleToFitX > 1.0f || scaleToFitY > 1.0f) {
+    			scaleToFit = Math.min(scaleToFitX, scaleToFitY);
+    		} else {
+    			scaleToFit = Math.max(scaleToFitX, scaleToFitY);
+    		}
+    	}
+    	return scaleToFit;
     }
     
     
@@ -111,21 +216,12 @@ public class AnimationPreview extends JPanel {
         if (imageStore != null) {
         	AnimationFrame frame = animationFrameSequenceInfoProvider.getAnimationFrame(currentAnimationFrameIndex);
         	if (frame != null) {
-        		Image image = imageStore.getImage(frame.getImage());
+        		float scaleToFit = getScaleToFit(imageStore.getMaxWidthOfImage(), imageStore.getMaxHeightOfImage());
+        		Image image = scaledFrameCache.getScaledImage(imageStore, frame.getImage(), scaleToFit);
 	        	if (image != null) {
-	        		float scaleToFit = 1.0f;
-        			float scaleToFitX = (float)getWidth() / (float)imageStore.getMaxWidthOfImage();
-        			float scaleToFitY = (float)getHeight() / (float)imageStore.getMaxHeightOfImage();
-	        		if (scaleToFitX > 1.0f || scaleToFitY > 1.0f) {
-	        			scaleToFit = Math.min(scaleToFitX, scaleToFitY);
-	        		} else {
-	        			scaleToFit = Math.max(scaleToFitX, scaleToFitY);
-	        		}
 	        		g.drawImage(image, 
 	            			getWidth()/2 - ((int)(imageStore.getMaxWidthOfImage()*scaleToFit))/2 + (int)(frame.getOffsetX()*scaleToFit), 
 	            			getHeight()/2 - ((int)(imageStore.getMaxHeightOfImage()*scaleToFit))/2 + (int)(frame.getOffsetY()*scaleToFit),
-	            			(int)(image.getWidth(null)*scaleToFit),
-	            			(int)(image.getHeight(null)*scaleToFit),
 	            			this);
 	            }
         	}
@@ -133,4 +229,4 @@ public class AnimationPreview extends JPanel {
         }
     }
    
-}
\ No newline at end of file
+}
@@ -21,6 +21,14 @@ public class ApplicationConfig {
 	public Color previewBackgroundColor;
 	public String projectPath = ".";
 	public String exportPath = ".";
+	public int undoHistoryMemoryMB = 128;
+	public boolean useUndoJournal = false;
+	public int imageCacheMemoryMB = 512;
+	public int pngCompressionLevel = 6;
+	public String imageCreationMode = "auto";
+	public int atlasMaxPageSize = 2048;
+	public int atlasPadding = 1;
+	public boolean atlasTrim = true;
 
 	public ApplicationConfig(String path) {
 		System.out.println("Loading config file " + path);
@@ -56,6 +64,14 @@ public class ApplicationConfig {
             frameViewTransperentAlphaColor = new Color(Integer.parseInt(getTextValueOfElement("bbbbbb", doc, "frameViewTransperentAlphaColor"), 16));
             frameViewBackgroundColor = new Color(Integer.parseInt(getTextValueOfElement("777777", doc, "frameViewBackgroundColor"), 16));
             previewBackgroundColor = new Color(Integer.parseInt(getTextValueOfElement("555555", doc, "previewBackgroundColor"), 16));
+            undoHistoryMemoryMB = Integer.parseInt(getTextValueOfElement(Integer.toString(undoHistoryMemoryMB), doc, "undoHistoryMemoryMB"));
+            useUndoJournal = Boolean.parseBoolean(getTextValueOfElement(Boolean.toString(useUndoJournal), doc, "useUndoJournal"));
+            imageCacheMemoryMB = Integer.parseInt(getTextValueOfElement(Integer.toString(imageCacheMemoryMB), doc, "imageCacheMemoryMB"));
+            pngCompressionLevel = Integer.parseInt(getTextValueOfElement(Integer.toString(pngCompressionLevel), doc, "pngCompressionLevel"));
+            imageCreationMode = getTextValueOfElement(imageCreationMode, doc, "imageCreationMode");
+            atlasMaxPageSize = Integer.parseInt(getTextValueOfElement(Integer.toString(atlasMaxPageSize), doc, "atlasMaxPageSize"));
+            atlasPadding = Integer.parseInt(getTextValueOfElement(Integer.toString(atlasPadding), doc, "atlasPadding"));
+            atlasTrim = Boolean.parseBoolean(getTextValueOfElement(Boolean.toString(atlasTrim), doc, "atlasTrim"));
         } catch (ParserConfigurationException pce) {
             System.out.println(pce.getMessage());
         } catch (SAXException se) {
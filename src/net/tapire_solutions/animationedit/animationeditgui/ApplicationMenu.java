@@ -19,10 +19,12 @@ public class ApplicationMenu extends JMenuBar {
 	protected JMenuItem saveAsItem;
 	protected JMenuItem openItem;
 	protected JMenuItem reloadImagesItem;
+	protected JMenuItem exportAtlasItem;
 	protected JMenuItem quitItem;
 	protected JMenuItem helpItem;
 	
 	protected JMenuItem undoItem;
+	protected JMenuItem redoItem;
 	protected JMenuItem copyItem;
 	protected JMenuItem cutItem;
 	protected JMenuItem pasteItem;
@@ -49,6 +51,7 @@ public class ApplicationMenu extends JMenuBar {
 	protected JMenuItem deleteFrameItem;
 	protected JMenuItem moveFrameUpItem;
 	protected JMenuItem moveFrameDownItem;
+	protected JMenuItem relinkIdenticalImagesItem;
 	
 	protected JMenuItem onionSkinOffItem;
 	protected JMenuItem onionSkin1DepthItem;
@@ -99,11 +102,13 @@ public class ApplicationMenu extends JMenuBar {
 		saveItem = addMenuItem(fileMenu, handler, "Save", KeyEvent.VK_S, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
 		saveAsItem = addMenuItem(fileMenu, handler, "Save as...");
 		reloadImagesItem = addMenuItem(fileMenu, handler, "Reload images", KeyEvent.VK_R, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
+		exportAtlasItem = addMenuItem(fileMenu, handler, "Export atlas", KeyEvent.VK_E, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
 		quitItem = addMenuItem(fileMenu, handler, "Quit", KeyEvent.VK_Q, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
 
 		helpItem = addMenuItem(helpMenu, handler, "Help");
 
 		undoItem = addMenuItem(editMenu, handler, "Undo", KeyEvent.VK_Z, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
+		redoItem = addMenuItem(editMenu, handler, "Redo", KeyEvent.VK_Y, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
 		copyItem = addMenuItem(editMenu, handler, "Copy", KeyEvent.VK_C, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
 		cutItem = addMenuItem(editMenu, handler, "Cut", KeyEvent.VK_X, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
 		pasteItem = addMenuItem(editMenu, handler, "Paste", KeyEvent.VK_V, Toolkit.getDefaultToolkit().getMenuShortcutKeyMask());
@@ -128,6 +133,7 @@ public class ApplicationMenu extends JMenuBar {
 		deleteFrameItem = addMenuItem(framesMenu, handler, "Delete frame", KeyEvent.VK_BACK_SPACE, 0);
 		moveFrameUpItem = addMenuItem(framesMenu, handler, "Move frame up", KeyEvent.VK_UP, KeyEvent.ALT_MASK);
 		moveFrameDownItem = addMenuItem(framesMenu, handler, "Move frame down", KeyEvent.VK_DOWN, KeyEvent.ALT_MASK);
+		relinkIdenticalImagesItem = addMenuItem(framesMenu, handler, "Relink frames with identical images");
 		
 		offsetXPlus1PixItem = addMenuItem(imageMenu, handler, "Offset X +1", KeyEvent.VK_L, 0);
 		offsetXMinus1PixItem = addMenuItem(imageMenu, handler, "Offset X -1", KeyEvent.VK_J, 0);
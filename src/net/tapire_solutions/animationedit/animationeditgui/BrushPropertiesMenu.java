@@ -11,10 +11,12 @@ class BrushPropertiesMenu extends JPanel {
 	
 	private JSlider brushSizeSlider;
 	private JCheckBox smoothCheckBox;
+	private JCheckBox roundCheckBox;
 	
 	public BrushPropertiesMenu() {
 		setLayout(new BoxLayout(this, BoxLayout.Y_AXIS));
 		smoothCheckBox = new JCheckBox("Smooth");
+		roundCheckBox = new JCheckBox("Round");
 		brushSizeSlider = new JSlider(JSlider.HORIZONTAL, 1, 10, 1);
 		brushSizeSlider.setMajorTickSpacing(1);
 		brushSizeSlider.setMinorTickSpacing(1);
@@ -24,6 +26,7 @@ class BrushPropertiesMenu extends JPanel {
 		add(new JLabel("Brush size:"));
 		add(brushSizeSlider);
 		add(smoothCheckBox);
+		add(roundCheckBox);
 	}
 	
 	public float getBrushSize() {
@@ -33,4 +36,8 @@ class BrushPropertiesMenu extends JPanel {
 	public boolean isSmooth() {
 		return smoothCheckBox.isSelected();
 	}
+	
+	public boolean isRound() {
+		return roundCheckBox.isSelected();
+	}
 }
\ No newline at end of file
@@ -1,13 +1,20 @@
 package net.tapire_solutions.animationedit.animationeditgui;
 
+import javax.swing.JComboBox;
 import javax.swing.JPanel;
 import javax.swing.JSlider;
 import javax.swing.JLabel;
 
+import net.tapire_solutions.animationedit.drawingtools.FillModeSelector.FillMode;
+
 
 class ColorTolerancePropertiesMenu extends JPanel {
 	
+	private static final String[] fillModeNames = { "Area", "Color in frame", "Color in all frames" };
+	private static final FillMode[] fillModes = { FillMode.AREA, FillMode.COLOR_IN_FRAME, FillMode.COLOR_IN_ALL_FRAMES };
+	
 	private JSlider toleranceSlider;
+	private JComboBox<String> fillModeComboBox;
 	
 	public ColorTolerancePropertiesMenu() {
 		toleranceSlider = new JSlider(JSlider.HORIZONTAL, 0, 10, 1);
@@ -16,6 +23,9 @@ class ColorTolerancePropertiesMenu extends JPanel {
 		toleranceSlider.setPaintTicks(true);
 		toleranceSlider.setPaintLabels(true);
 		toleranceSlider.setSnapToTicks(true);
+		fillModeComboBox = new JComboBox<String>(fillModeNames);
+		add(new JLabel("Fill:"));
+		add(fillModeComboBox);
 		add(new JLabel("Tolerance:"));
 		add(toleranceSlider);
 	}
@@ -23,4 +33,8 @@ class ColorTolerancePropertiesMenu extends JPanel {
 	public float getColorTolerance() {
 		return (float)toleranceSlider.getValue() / 10;
 	}
-}
\ No newline at end of file
+	
+	public FillMode getFillMode() {
+		return fillModes[fillModeComboBox.getSelectedIndex()];
+	}
+}
@@ -0,0 +1,129 @@
+package net.tapire_solutions.animationedit.animationeditgui;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameSequenceInfoProvider;
+import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
+
+/**
+ * Onion-skin frames around the selected frame, blended into one image.
+ *
+ * The image is only redrawn when the selected frame, the depth, or the
+ * images or offsets of the neighbouring frames change.
+ */
+public class OnionSkinLayer {
+
+	private BufferedImage image = null;
+	// everything the image was drawn from, compared to find out if it must be redrawn
+	private List<Object> drawnFrom = null;
+	private List<String> missingImageNames = new ArrayList<String>();
+	private long version = 0;
+
+	/**
+	 * @return Alpha of an onion-skin frame.
+	 * @param distance Number of frames from the selected frame.
+	 */
+	private static float getAlpha(int distance) {
+		float alpha = 0.3f - ((float)Math.abs(distance))/(8);
+		return Math.max(alpha, 0.01f);
+	}
+
+	/**
+	 * @return Neighbouring frames in drawing order, null where there is no frame.
+	 */
+	private static List<AnimationFrame> getFrames(AnimationFrameSequenceInfoProvider frames, int depth) {
+		List<AnimationFrame> result = new ArrayList<AnimationFrame>();
+		int selectedIndex = frames.getSelectedAnimationFrameIndex();
+		for (int i = -depth; i < 0; i++) {
+			result.add(frames.getAnimationFrame(selectedIndex + i));
+		}
+		for (int i = depth; i > 0; i--) {
+			result.add(frames.getAnimationFrame(selectedIndex + i));
+		}
+		return result;
+	}
+
+	/**
+	 * Redraw the layer if anything it shows has changed.
+	 * @param depth Number of frames shown before and after the selected frame.
+	 * @param width Width of the layer.
+	 * @param height Height of the layer.
+	 * @return Layer image, or null if there is nothing to show.
+	 */
+	public BufferedImage update(ImageStore imageStore, AnimationFrameSequenceInfoProvider frames,
+			int depth, int width, int height) {
+		if (depth <= 0 || width <= 0 || height <= 0) {
+			drawnFrom = null;
+			missingImageNames.clear();
+			return null;
+		}
+		List<AnimationFrame> neighbours = getFrames(frames, depth);
+		List<Object> currentFrom = new ArrayList<Object>();
+		currentFrom.add(imageStore);
+		currentFrom.add(frames.getSelectedAnimationFrameIndex());
+		currentFrom.add(width);
+		currentFrom.add(height);
+		for (AnimationFrame frame : neighbours) {
+			if (frame != null) {
+				currentFrom.add(frame.getImage());
+				currentFrom.add(imageStore.getImageVersion(frame.getImage()));
+				currentFrom.add(frame.getOffsetX());
+				currentFrom.add(frame.getOffsetY());
+			} else {
+				currentFrom.add(null);
+			}
+		}
+		if (currentFrom.equals(drawnFrom)) {
+			return image;
+		}
+
+		if (image == null || image.getWidth() != width || image.getHeight() != height) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		missingImageNames.clear();
+		version++;
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setBackground(new Color(0, 0, 0, 0));
+			g.clearRect(0, 0, width, height);
+			for (int i = 0; i < neighbours.size(); i++) {
+				AnimationFrame frame = neighbours.get(i);
+				if (frame == null) continue;
+				Image frameImage = imageStore.getImageWithoutWaiting(frame.getImage());
+				if (frameImage != null) {
+					int distance = i < depth ? depth - i : 2 * depth - i;
+					g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, getAlpha(distance)));
+					g.drawImage(frameImage, frame.getOffsetX(), frame.getOffsetY(), null);
+				} else if (!imageStore.isImageLoading(frame.getImage())) {
+					missingImageNames.add(frame.getImage());
+				}
+			}
+		} finally {
+			g.dispose();
+		}
+		// loading images changes their versions, so the layer is redrawn when they are loaded
+		drawnFrom = currentFrom;
+		return image;
+	}
+
+	/**
+	 * @return Images of neighbouring frames that couldn't be loaded.
+	 */
+	public List<String> getMissingImageNames() {
+		return missingImageNames;
+	}
+
+	/**
+	 * @return Number that changes every time the layer is redrawn.
+	 */
+	public long getVersion() {
+		return version;
+	}
+}
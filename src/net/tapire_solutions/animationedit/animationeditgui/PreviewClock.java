@@ -0,0 +1,66 @@
+package net.tapire_solutions.animationedit.animationeditgui;
+
+/**
+ * Counts animation tics from System.nanoTime.
+ *
+ * Tic n starts exactly n / ticsPerSecond seconds after the clock was
+ * started, in integer nanoseconds, so the preview doesn't drift from the
+ * engine however late the timer thread wakes up.
+ *
+ * Times are passed in by the caller, in System.nanoTime units.
+ */
+public class PreviewClock {
+
+	private static final long nanosPerSecond = 1000000000L;
+
+	private int ticsPerSecond = 0;
+	private long startNanos = 0;
+	private long ticsAtStart = 0;
+	private long ticsTaken = 0;
+
+	/**
+	 * Change speed. Tics counted so far are kept.
+	 * @param ticsPerSecond Tics per second, 0 to stop.
+	 */
+	public synchronized void setTicsPerSecond(int ticsPerSecond, long nowNanos) {
+		ticsAtStart = getTics(nowNanos);
+		startNanos = nowNanos;
+		this.ticsPerSecond = Math.max(ticsPerSecond, 0);
+	}
+
+	public synchronized int getTicsPerSecond() {
+		return ticsPerSecond;
+	}
+
+	/**
+	 * @return Number of tics that have started since the clock was created.
+	 */
+	public synchronized long getTics(long nowNanos) {
+		if (ticsPerSecond == 0 || nowNanos < startNanos) {
+			return ticsAtStart;
+		}
+		return ticsAtStart + (nowNanos - startNanos) * ticsPerSecond / nanosPerSecond;
+	}
+
+	/**
+	 * @return Time the next tic starts, or -1 if the clock is stopped.
+	 */
+	public synchronized long getNextTicNanos(long nowNanos) {
+		if (ticsPerSecond == 0) {
+			return -1;
+		}
+		long nextTic = getTics(nowNanos) + 1 - ticsAtStart;
+		// round up, so the tic has started when the time is reached
+		return startNanos + (nextTic * nanosPerSecond + ticsPerSecond - 1) / ticsPerSecond;
+	}
+
+	/**
+	 * @return Number of tics started since the last call.
+	 */
+	public synchronized long takeNewTics(long nowNanos) {
+		long tics = getTics(nowNanos);
+		long newTics = tics - ticsTaken;
+		ticsTaken = tics;
+		return newTics;
+	}
+}
@@ -0,0 +1,109 @@
+package net.tapire_solutions.animationedit.animationeditgui;
+
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.tapire_solutions.animationedit.graphicsutils.CompatibleImageCreator;
+import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
+
+/**
+ * Frame images scaled to the size they are shown at, so playback only
+ * copies images instead of scaling them every tic.
+ *
+ * A scaled image is redrawn when its image version changes. All are dropped
+ * when the scale or image store changes. Least recently used images are
+ * dropped when over the memory budget.
+ */
+public class ScaledFrameCache {
+
+	private static class ScaledFrame {
+		public final long version;
+		public final BufferedImage image;
+		public ScaledFrame(long version, BufferedImage image) {
+			this.version = version;
+			this.image = image;
+		}
+		public long getBytes() {
+			return 4L * image.getWidth() * image.getHeight();
+		}
+	}
+
+	private Map<String, ScaledFrame> frames = new LinkedHashMap<String, ScaledFrame>(16, 0.75f, true);
+	private ImageStore imageStore = null;
+	private float scale = 1.0f;
+	private long cachedBytes = 0;
+	private final long maxBytes;
+
+	/**
+	 * @param maxBytes Memory budget for scaled images.
+	 */
+	public ScaledFrameCache(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public void clear() {
+		frames.clear();
+		cachedBytes = 0;
+	}
+
+	/**
+	 * @param imageName File name of image, eg. "myimage.png".
+	 * @param scale Scale to draw at.
+	 * @return Scaled image, or null if it isn't loaded yet or too small to show.
+	 */
+	public Image getScaledImage(ImageStore imageStore, String imageName, float scale) {
+		if (imageStore != this.imageStore || scale != this.scale) {
+			clear();
+			this.imageStore = imageStore;
+			this.scale = scale;
+		}
+		Image image = imageStore.getImageWithoutWaiting(imageName);
+		if (image == null) {
+			return null;
+		}
+		if (scale == 1.0f) {
+			return image;
+		}
+		long version = imageStore.getImageVersion(imageName);
+		ScaledFrame frame = frames.get(imageName);
+		if (frame != null && frame.version == version) {
+			return frame.image;
+		}
+
+		int width = (int)(image.getWidth(null) * scale);
+		int height = (int)(image.getHeight(null) * scale);
+		if (width <= 0 || height <= 0) {
+			return null;
+		}
+		BufferedImage scaledImage = CompatibleImageCreator.createCompatibleImage(width, height);
+		Graphics2D g = scaledImage.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		ScaledFrame replaced = frames.put(imageName, new ScaledFrame(version, scaledImage));
+		if (replaced != null) {
+			cachedBytes -= replaced.getBytes();
+		}
+		cachedBytes += 4L * width * height;
+		dropFramesOverBudget(imageName);
+		return scaledImage;
+	}
+
+	private void dropFramesOverBudget(String keepImageName) {
+		Iterator<Map.Entry<String, ScaledFrame>> it = frames.entrySet().iterator();
+		while (cachedBytes > maxBytes && it.hasNext()) {
+			Map.Entry<String, ScaledFrame> entry = it.next();
+			if (entry.getKey().equals(keepImageName)) continue;
+			cachedBytes -= entry.getValue().getBytes();
+			it.remove();
+		}
+	}
+}
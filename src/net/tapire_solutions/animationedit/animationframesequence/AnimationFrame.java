@@ -43,6 +43,10 @@ public class AnimationFrame {
 		return image;
 	}
 	
+	public void setImage(String image) {
+		this.image = image;
+	}
+	
 	public int getTics() {
 		return tics;
 	}
@@ -1,7 +1,11 @@
 package net.tapire_solutions.animationedit.animationframesequence;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import net.tapire_solutions.animationedit.graphicsutils.HistoryMemoryBudget;
 import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
 
 /**
@@ -12,10 +16,28 @@ public class AnimationFrameSequence {
 	ImageStore imageStore;
 	ArrayList<AnimationFrame> animationFrames;
 	ArrayList<AnimationFrameSequenceChangedListener> listeners = new ArrayList<AnimationFrameSequenceChangedListener>();
+	PlaybackGraph playbackGraph;
 	
 	public AnimationFrameSequence(String workingDirectory, String animationSequenceFile) {
 		imageStore = new ImageStore(workingDirectory);
 		animationFrames = AnimationFrameSequenceFile.createAnimationFrameSequenceFromXml(animationSequenceFile);
+		compilePlaybackGraph();
+	}
+	
+	/**
+	 * @param workingDirectory Directory with the images.
+	 * @param animationSequenceFile Sequence file to read.
+	 * @param historyMemoryBudget Memory budget for undo states, may be shared between sequences.
+	 * @param useUndoJournal Move undo states that don't fit in the budget to disk.
+	 */
+	public AnimationFrameSequence(String workingDirectory, String animationSequenceFile, 
+			HistoryMemoryBudget historyMemoryBudget, boolean useUndoJournal) {
+		imageStore = new ImageStore(workingDirectory, historyMemoryBudget);
+		if (useUndoJournal) {
+			imageStore.useUndoJournal();
+		}
+		animationFrames = AnimationFrameSequenceFile.createAnimationFrameSequenceFromXml(animationSequenceFile);
+		compilePlaybackGraph();
 	}
 	
 	public void addChangeListener(AnimationFrameSequenceChangedListener listener) {
@@ -30,6 +52,17 @@ public class AnimationFrameSequence {
 		return imageStore;
 	}
 	
+	/**
+	 * Start loading the images of all frames in the background.
+	 */
+	public void preloadImages() {
+		ArrayList<String> imageNames = new ArrayList<String>();
+		for (AnimationFrame frame : animationFrames) {
+			imageNames.add(frame.getImage());
+		}
+		imageStore.preloadImages(imageNames);
+	}
+	
 	public ArrayList<AnimationFrame> getAnimationFrames() {
 		return animationFrames;
 	}
@@ -39,19 +72,78 @@ public class AnimationFrameSequence {
 		notifyChangeListeners();
 	}
 	
+	/**
+	 * Find images used by frames that have the same size and pixels, eg.
+	 * copies that were never edited.
+	 * @return Groups of identical images, each in the order they are first used.
+	 */
+	public List<List<String>> findIdenticalImages() {
+		ArrayList<String> imageNames = new ArrayList<String>();
+		for (AnimationFrame frame : animationFrames) {
+			imageNames.add(frame.getImage());
+		}
+		return imageStore.findIdenticalImages(imageNames);
+	}
+	
+	/**
+	 * Make frames use the first image of each group instead of the others.
+	 * The image files are kept.
+	 * @param identicalImages Groups from findIdenticalImages().
+	 * @return Number of frames changed.
+	 */
+	public int relinkImages(List<List<String>> identicalImages) {
+		Map<String, String> replacements = new HashMap<String, String>();
+		for (List<String> group : identicalImages) {
+			for (int i = 1; i < group.size(); i++) {
+				replacements.put(group.get(i), group.get(0));
+			}
+		}
+		int numRelinked = 0;
+		for (AnimationFrame frame : animationFrames) {
+			String replacement = replacements.get(frame.getImage());
+			if (replacement != null) {
+				frame.setImage(replacement);
+				numRelinked++;
+			}
+		}
+		if (numRelinked > 0) {
+			notifyChangeListeners();
+		}
+		return numRelinked;
+	}
+	
+	/**
+	 * Call after changing the properties of a frame, eg. its tics or tags.
+	 */
+	public void animationFrameChanged(AnimationFrame frame) {
+		notifyChangeListeners();
+	}
+	
 	private void notifyChangeListeners() {
+		compilePlaybackGraph();
 		for (AnimationFrameSequenceChangedListener listener : listeners) {
 			listener.onAnimationFrameSequenceChanged();
 		}
 	}
 	
-	public int getFrameIndexOfTag(String tag) {
-		AnimationFrame frame;
-		for (int i = 0; i < animationFrames.size(); i++) {
-			frame = animationFrames.get(i);
-			if (frame.getTag().equals(tag)) return i;
+	private void compilePlaybackGraph() {
+		PlaybackGraph oldGraph = playbackGraph;
+		playbackGraph = PlaybackGraph.compile(animationFrames);
+		List<String> danglingNextTags = playbackGraph.getDanglingNextTags();
+		if (!danglingNextTags.isEmpty() && (oldGraph == null || !danglingNextTags.equals(oldGraph.getDanglingNextTags()))) {
+			System.out.println("No frame has the next tags " + danglingNextTags + ", those frames repeat.");
 		}
-		return -1;
+	}
+	
+	/**
+	 * @return Frame order compiled for playback, replaced when the sequence changes.
+	 */
+	public PlaybackGraph getPlaybackGraph() {
+		return playbackGraph;
+	}
+	
+	public int getFrameIndexOfTag(String tag) {
+		return playbackGraph.getIndexOfTag(tag);
 	}
 	
 	public AnimationFrame getAnimationFrame(int i) {
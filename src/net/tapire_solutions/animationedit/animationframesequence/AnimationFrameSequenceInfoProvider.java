@@ -7,4 +7,5 @@ public interface AnimationFrameSequenceInfoProvider {
 	public int getNumAnimationFrames();
 	public AnimationFrame getAnimationFrame(int i);
 	public int getIndexOfAnimationFrameWithTag(String tag);
+	public PlaybackGraph getPlaybackGraph();
 }
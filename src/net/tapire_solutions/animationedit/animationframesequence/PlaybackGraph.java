@@ -0,0 +1,96 @@
+package net.tapire_solutions.animationedit.animationframesequence;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The frame order of an animation sequence, compiled for playback.
+ *
+ * Next tags are resolved to frame indices once, so stepping through frames
+ * is an array lookup. Immutable, a new graph is compiled when the sequence
+ * changes.
+ *
+ * Playback rules, as in the engine: a frame lasts its tics, at least one.
+ * Then the frame with the tag named in next follows, or the next frame in
+ * the list if next is empty, wrapping to the first. If no frame has the
+ * next tag, the frame follows itself.
+ */
+public class PlaybackGraph {
+
+	private final int[] nextIndices;
+	private final int[] tics;
+	private final Map<String, Integer> tagIndices;
+	private final List<String> danglingNextTags;
+
+	private PlaybackGraph(int[] nextIndices, int[] tics, Map<String, Integer> tagIndices, List<String> danglingNextTags) {
+		this.nextIndices = nextIndices;
+		this.tics = tics;
+		this.tagIndices = tagIndices;
+		this.danglingNextTags = danglingNextTags;
+	}
+
+	public static PlaybackGraph compile(List<AnimationFrame> frames) {
+		int numFrames = frames == null ? 0 : frames.size();
+		int[] nextIndices = new int[numFrames];
+		int[] tics = new int[numFrames];
+		Map<String, Integer> tagIndices = new HashMap<String, Integer>();
+		List<String> danglingNextTags = new ArrayList<String>();
+		for (int i = 0; i < numFrames; i++) {
+			String tag = frames.get(i).getTag();
+			// the first frame with a tag wins
+			if (tag != null && !tag.isEmpty() && !tagIndices.containsKey(tag)) {
+				tagIndices.put(tag, i);
+			}
+		}
+		for (int i = 0; i < numFrames; i++) {
+			AnimationFrame frame = frames.get(i);
+			tics[i] = Math.max(frame.getTics(), 1);
+			String next = frame.getNext();
+			if (next == null || next.isEmpty()) {
+				nextIndices[i] = i + 1 < numFrames ? i + 1 : 0;
+			} else if (tagIndices.containsKey(next)) {
+				nextIndices[i] = tagIndices.get(next);
+			} else {
+				nextIndices[i] = i;
+				danglingNextTags.add(next);
+			}
+		}
+		return new PlaybackGraph(nextIndices, tics, tagIndices, Collections.unmodifiableList(danglingNextTags));
+	}
+
+	public int getNumFrames() {
+		return nextIndices.length;
+	}
+
+	/**
+	 * @return Index of the frame that follows a frame.
+	 */
+	public int getNextIndex(int frameIndex) {
+		return nextIndices[frameIndex];
+	}
+
+	/**
+	 * @return Number of tics a frame is shown, at least 1.
+	 */
+	public int getTics(int frameIndex) {
+		return tics[frameIndex];
+	}
+
+	/**
+	 * @return Index of the first frame with a tag, or -1 if none.
+	 */
+	public int getIndexOfTag(String tag) {
+		Integer index = tagIndices.get(tag);
+		return index == null ? -1 : index;
+	}
+
+	/**
+	 * @return Next tags that no frame has, once per frame that uses them.
+	 */
+	public List<String> getDanglingNextTags() {
+		return danglingNextTags;
+	}
+}
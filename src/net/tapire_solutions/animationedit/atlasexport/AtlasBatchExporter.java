@@ -0,0 +1,258 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.tapire_solutions.animationedit.animationeditgui.ApplicationConfig;
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrameSequenceFile;
+import net.tapire_solutions.animationedit.graphicsutils.CompatibleImageCreator;
+import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
+
+/**
+ * Exports atlases of many sequences from the command line, without a window.
+ *
+ * Sequences are exported in parallel, one per thread, each with its own
+ * image store. Exports are kept in an ExportCache in the export directory:
+ * a sequence whose file, images and settings are unchanged since a previous
+ * export is copied from the cache instead, and only the pages that changed
+ * are encoded again.
+ */
+public class AtlasBatchExporter {
+
+	public enum Result {
+		EXPORTED,
+		CACHED,
+		FAILED
+	}
+
+	/**
+	 * A sequence file and where to export it.
+	 */
+	private static class Job {
+		public final File sequenceFile;
+		public final File exportDirectory;
+		public Job(File sequenceFile, File exportDirectory) {
+			this.sequenceFile = sequenceFile;
+			this.exportDirectory = exportDirectory;
+		}
+	}
+
+	private final ApplicationConfig config;
+	private final int numThreads;
+	private boolean force = false;
+	private ExportCache cache;
+
+	/**
+	 * @param config Atlas and png settings.
+	 * @param numThreads Number of sequences to export at the same time.
+	 */
+	public AtlasBatchExporter(ApplicationConfig config, int numThreads) {
+		this.config = config;
+		this.numThreads = Math.max(numThreads, 1);
+	}
+
+	/**
+	 * @param force If to export sequences that are in the cache too.
+	 */
+	public void setForce(boolean force) {
+		this.force = force;
+	}
+
+	/**
+	 * @param sequenceFile Sequence xml file.
+	 * @return Name of the atlas of a sequence, the file name without ".xml".
+	 */
+	public static String getAtlasName(File sequenceFile) {
+		String name = sequenceFile.getName();
+		if (name.endsWith(".xml")) {
+			name = name.substring(0, name.length() - ".xml".length());
+		}
+		return name;
+	}
+
+	/**
+	 * Export sequence files, and the sequence files in directories and
+	 * their subdirectories. Atlases of sequences in a directory are exported
+	 * to the same subdirectory of the export directory.
+	 * @param inputs Sequence files and directories.
+	 * @param exportDirectory Directory to export to.
+	 * @return True if no sequence failed.
+	 */
+	public boolean exportAll(List<File> inputs, File exportDirectory) {
+		long startTime = System.nanoTime();
+		cache = new ExportCache(exportDirectory);
+		List<Job> jobs = new ArrayList<Job>();
+		for (File input : inputs) {
+			if (input.isDirectory()) {
+				collectJobs(input, exportDirectory, jobs);
+			} else {
+				jobs.add(new Job(input, exportDirectory));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "AtlasExporter");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<Future<Result>> results = new ArrayList<Future<Result>>();
+		for (final Job job : jobs) {
+			results.add(executor.submit(new Callable<Result>() {
+				@Override
+				public Result call() {
+					return export(job);
+				}
+			}));
+		}
+		int[] counts = new int[Result.values().length];
+		for (Future<Result> result : results) {
+			try {
+				counts[result.get().ordinal()]++;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				counts[Result.FAILED.ordinal()]++;
+			} catch (ExecutionException e) {
+				e.getCause().printStackTrace();
+				counts[Result.FAILED.ordinal()]++;
+			}
+		}
+		executor.shutdown();
+
+		System.out.println("Atlas export done: " + counts[Result.EXPORTED.ordinal()] + " exported, "
+				+ counts[Result.CACHED.ordinal()] + " from cache, " + counts[Result.FAILED.ordinal()] + " failed, in "
+				+ (System.nanoTime() - startTime) / 1000000 + " ms on " + numThreads + " threads.");
+		System.out.println("Atlas export " + cache.getStatistics() + ".");
+		return counts[Result.FAILED.ordinal()] == 0;
+	}
+
+	private static void collectJobs(File directory, File exportDirectory, List<Job> jobs) {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		Arrays.sort(files);
+		for (File file : files) {
+			if (file.isDirectory()) {
+				collectJobs(file, new File(exportDirectory, file.getName()), jobs);
+			} else if (isSequenceFile(file)) {
+				jobs.add(new Job(file, exportDirectory));
+			}
+		}
+	}
+
+	/**
+	 * @return True if a file is an AnimationEdit sequence file.
+	 */
+	private static boolean isSequenceFile(File file) {
+		if (!file.getName().endsWith(".xml") || file.getName().endsWith(".atlas.xml")) {
+			return false;
+		}
+		try {
+			return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(file)
+					.getDocumentElement().getNodeName().equals("AnimationEditFile");
+		} catch (Exception e) {
+			return false;
+		}
+	}
+
+	private Result export(Job job) {
+		long startTime = System.nanoTime();
+		String atlasName = getAtlasName(job.sequenceFile);
+		ArrayList<AnimationFrame> frames = AnimationFrameSequenceFile.createAnimationFrameSequenceFromXml(job.sequenceFile.getPath());
+		AtlasExporter exporter = new AtlasExporter(config.atlasMaxPageSize, config.atlasPadding);
+		exporter.setCompressionLevel(config.pngCompressionLevel);
+		exporter.setTrim(config.atlasTrim);
+		exporter.setCache(cache);
+		String key = null;
+		try {
+			key = ExportCache.getSequenceKey(job.sequenceFile, frames, atlasName, exporter.getSettingsKey());
+		} catch (IOException e) {
+			// not cached, the export reports what is missing
+		}
+		if (key != null && !force && cache.restoreSequence(key, job.exportDirectory, atlasName)) {
+			System.out.println(job.sequenceFile.getPath() + ": from cache in " + (System.nanoTime() - startTime) / 1000000 + " ms.");
+			return Result.CACHED;
+		}
+
+		File imageDirectory = job.sequenceFile.getAbsoluteFile().getParentFile();
+		ImageStore imageStore = new ImageStore(imageDirectory.getPath());
+		imageStore.setMaxCachedImageBytes(config.imageCacheMemoryMB * 1024L * 1024L / numThreads);
+		boolean wasExported;
+		try {
+			wasExported = exporter.export(frames, imageStore, job.exportDirectory, atlasName);
+		} finally {
+			imageStore.close();
+		}
+		if (wasExported && key != null) {
+			cache.storeSequence(key, job.exportDirectory, exporter.getExportedFileNames());
+		}
+		System.out.println(job.sequenceFile.getPath() + ": " + (wasExported ? "exported" : "failed") + " in "
+				+ (System.nanoTime() - startTime) / 1000000 + " ms.");
+		return wasExported ? Result.EXPORTED : Result.FAILED;
+	}
+
+	/**
+	 * Command line entry.
+	 *
+	 * Args: [-config file] [-out directory] [-threads n] [-force] sequence files or directories...
+	 *   -config: config file for the atlas settings, default ./config.xml.
+	 *   -out: directory to export to, default exportPath of the config.
+	 *   -threads: sequences exported at the same time, default one per core.
+	 *   -force: export sequences that are in the cache too.
+	 *
+	 * Exits with 1 if any sequence failed.
+	 */
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		CompatibleImageCreator.setMode(CompatibleImageCreator.Mode.HEADLESS);
+
+		String configFile = "./config.xml";
+		String exportPath = null;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		boolean force = false;
+		List<File> inputs = new ArrayList<File>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-config")) {
+					configFile = args[++i];
+				} else if (args[i].equals("-out")) {
+					exportPath = args[++i];
+				} else if (args[i].equals("-threads")) {
+					numThreads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-force")) {
+					force = true;
+				} else {
+					inputs.add(new File(args[i]));
+				}
+			}
+		} catch (RuntimeException e) {
+			inputs.clear();
+		}
+		if (inputs.isEmpty()) {
+			System.out.println("Usage: AtlasBatchExporter [-config file] [-out directory] [-threads n] [-force]"
+					+ " sequence files or directories...");
+			System.exit(1);
+		}
+
+		ApplicationConfig config = new ApplicationConfig(configFile);
+		if (exportPath == null) {
+			exportPath = config.exportPath;
+		}
+		AtlasBatchExporter batchExporter = new AtlasBatchExporter(config, numThreads);
+		batchExporter.setForce(force);
+		System.exit(batchExporter.exportAll(inputs, new File(exportPath)) ? 0 : 1);
+	}
+}
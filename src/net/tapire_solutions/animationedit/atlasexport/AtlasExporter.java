@@ -0,0 +1,319 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+import net.tapire_solutions.animationedit.graphicsutils.ImageContent;
+import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
+import net.tapire_solutions.animationedit.graphicsutils.PngEncoder;
+
+/**
+ * Exports the frames of an animation sequence as a texture atlas: the frame
+ * images packed into one or more PNG pages, and an xml file telling where
+ * each frame is, with its offsets, tics, tags, next and event.
+ *
+ * For a sequence named "walk" the files are walk_0.png, walk_1.png... and
+ * walk.atlas.xml, see AtlasFile for the format.
+ *
+ * Transparent borders are trimmed off the images, and the offsets of the
+ * frames moved to where the trimmed image starts. Images with the same
+ * trimmed pixels, found by content hash and then compared, are packed once
+ * and share the same area of the atlas.
+ */
+public class AtlasExporter {
+
+	public static final int defaultMaxPageSize = 2048;
+	public static final int defaultPadding = 1;
+
+	/**
+	 * A bitmap packed in the atlas.
+	 */
+	static class Sprite {
+		public final BufferedImage image;
+		public int page;
+		public int x;
+		public int y;
+		public Sprite(BufferedImage image) {
+			this.image = image;
+		}
+		public int getWidth() {
+			return image.getWidth();
+		}
+		public int getHeight() {
+			return image.getHeight();
+		}
+	}
+
+	/**
+	 * A frame image, as the trimmed part of it packed in the atlas.
+	 */
+	static class AtlasImage {
+		public final Sprite sprite;
+		/** Position of the trimmed part in the frame image. */
+		public final int trimX;
+		public final int trimY;
+		public final int sourceWidth;
+		public final int sourceHeight;
+		public AtlasImage(Sprite sprite, int trimX, int trimY, int sourceWidth, int sourceHeight) {
+			this.sprite = sprite;
+			this.trimX = trimX;
+			this.trimY = trimY;
+			this.sourceWidth = sourceWidth;
+			this.sourceHeight = sourceHeight;
+		}
+	}
+
+	private final int maxPageSize;
+	private final int padding;
+	private int compressionLevel = PngEncoder.defaultCompressionLevel;
+	private boolean trim = true;
+	private ExportCache cache = null;
+	private List<String> exportedFileNames = new ArrayList<String>();
+
+	public AtlasExporter() {
+		this(defaultMaxPageSize, defaultPadding);
+	}
+
+	/**
+	 * @param maxPageSize Max width and height of pages. Larger images get a page of their own.
+	 * @param padding Transparent pixels between images.
+	 */
+	public AtlasExporter(int maxPageSize, int padding) {
+		this.maxPageSize = maxPageSize;
+		this.padding = Math.max(padding, 0);
+	}
+
+	/**
+	 * @param trim If to trim transparent borders off images, on by default.
+	 */
+	public void setTrim(boolean trim) {
+		this.trim = trim;
+	}
+
+	/**
+	 * @param compressionLevel Deflate level of pages, 0-9.
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @param cache Cache to take encoded pages from, or null to encode all pages.
+	 */
+	public void setCache(ExportCache cache) {
+		this.cache = cache;
+	}
+
+	/**
+	 * @return The settings that change the exported files, for cache keys.
+	 */
+	public String getSettingsKey() {
+		return "maxPageSize=" + maxPageSize + ",padding=" + padding + ",trim=" + trim
+				+ ",compressionLevel=" + compressionLevel;
+	}
+
+	/**
+	 * @return Names of the files written by the last export.
+	 */
+	public List<String> getExportedFileNames() {
+		return exportedFileNames;
+	}
+
+	/**
+	 * Export an atlas. Nothing is written if an image is missing.
+	 * @param frames Frames of the sequence.
+	 * @param imageStore Images of the frames.
+	 * @param exportDirectory Directory to write to, created if missing.
+	 * @param atlasName Name of the atlas files, eg. "walk".
+	 * @return True if all files were written.
+	 */
+	public boolean export(List<AnimationFrame> frames, ImageStore imageStore, File exportDirectory, String atlasName) {
+		long startTime = System.nanoTime();
+		exportedFileNames = new ArrayList<String>();
+		Map<String, AtlasImage> atlasImages = new HashMap<String, AtlasImage>();
+		Map<Long, List<Sprite>> spritesByHash = new HashMap<Long, List<Sprite>>();
+		List<Sprite> sprites = new ArrayList<Sprite>();
+		for (AnimationFrame frame : frames) {
+			if (atlasImages.containsKey(frame.getImage())) continue;
+			Image image = imageStore.getImage(frame.getImage());
+			if (!(image instanceof BufferedImage)) {
+				System.out.println("Atlas " + atlasName + " not exported, couldn't load image " + frame.getImage());
+				return false;
+			}
+			atlasImages.put(frame.getImage(), createAtlasImage(imageStore, frame.getImage(), (BufferedImage)image,
+					spritesByHash, sprites));
+		}
+		List<BufferedImage> pages = pack(sprites);
+
+		if (!exportDirectory.isDirectory() && !exportDirectory.mkdirs()) {
+			System.out.println("Atlas " + atlasName + " not exported, couldn't create directory " + exportDirectory);
+			return false;
+		}
+		List<String> pageFileNames = new ArrayList<String>();
+		try {
+			for (int i = 0; i < pages.size(); i++) {
+				String pageFileName = atlasName + "_" + i + ".png";
+				writePage(pages.get(i), new File(exportDirectory, pageFileName));
+				pageFileNames.add(pageFileName);
+			}
+		} catch (IOException e) {
+			System.out.println("Atlas " + atlasName + " not exported: " + e.getMessage());
+			return false;
+		}
+		List<AtlasImage> frameImages = new ArrayList<AtlasImage>();
+		for (AnimationFrame frame : frames) {
+			frameImages.add(atlasImages.get(frame.getImage()));
+		}
+		String atlasFileName = atlasName + ".atlas.xml";
+		if (!AtlasFile.write(new File(exportDirectory, atlasFileName), pageFileNames, pages, frames, frameImages)) {
+			return false;
+		}
+		exportedFileNames.addAll(pageFileNames);
+		exportedFileNames.add(atlasFileName);
+		deleteStalePages(exportDirectory, atlasName, exportedFileNames);
+		System.out.println("Exported atlas " + atlasName + ": " + frames.size() + " frames, " + atlasImages.size()
+				+ " images, " + sprites.size() + " unique, on " + pages.size() + " pages in "
+				+ (System.nanoTime() - startTime) / 1000000 + " ms.");
+		return true;
+	}
+
+	/**
+	 * Delete pages of an atlas left by an export with more pages.
+	 * @param fileNames Files of the current export.
+	 */
+	static void deleteStalePages(File exportDirectory, String atlasName, List<String> fileNames) {
+		File[] files = exportDirectory.listFiles();
+		if (files == null) return;
+		String prefix = atlasName + "_";
+		for (File file : files) {
+			String name = file.getName();
+			if (name.startsWith(prefix) && name.endsWith(".png") && !fileNames.contains(name)
+					&& name.substring(prefix.length(), name.length() - ".png".length()).matches("[0-9]+")) {
+				if (file.delete()) {
+					System.out.println("Deleted stale atlas page " + file.getPath());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Encode a page, or take it from the cache if a page with the same pixels was encoded before.
+	 */
+	private void writePage(BufferedImage page, File file) throws IOException {
+		PngEncoder encoder = new PngEncoder(compressionLevel);
+		if (cache == null) {
+			encoder.write(page, file);
+			return;
+		}
+		String key = ExportCache.getPageKey(page, compressionLevel);
+		byte[] png = cache.getPage(key);
+		if (png == null) {
+			png = encoder.encode(page);
+			cache.putPage(key, png);
+		}
+		Files.write(file.toPath(), png);
+	}
+
+	/**
+	 * Trim an image and find or add the sprite with its pixels.
+	 */
+	private AtlasImage createAtlasImage(ImageStore imageStore, String imageName, BufferedImage image,
+			Map<Long, List<Sprite>> spritesByHash, List<Sprite> sprites) {
+		Rectangle bounds = trim ? imageStore.getVisibleBounds(imageName) : null;
+		long hash;
+		if (bounds != null) {
+			// hashed by the store over the same area
+			hash = imageStore.getContentHash(imageName);
+		} else {
+			// not trimmed, or nothing visible and one transparent pixel is kept
+			bounds = trim ? new Rectangle(0, 0, 1, 1) : new Rectangle(0, 0, image.getWidth(), image.getHeight());
+			hash = ImageContent.hash(image, bounds);
+		}
+		BufferedImage trimmed = copyArea(image, bounds);
+		List<Sprite> candidates = spritesByHash.get(hash);
+		if (candidates == null) {
+			candidates = new ArrayList<Sprite>();
+			spritesByHash.put(hash, candidates);
+		}
+		Sprite sprite = null;
+		for (Sprite candidate : candidates) {
+			if (ImageContent.isSameContent(candidate.image, new Rectangle(0, 0, candidate.getWidth(), candidate.getHeight()),
+					trimmed, new Rectangle(0, 0, bounds.width, bounds.height))) {
+				sprite = candidate;
+				break;
+			}
+		}
+		if (sprite == null) {
+			sprite = new Sprite(trimmed);
+			candidates.add(sprite);
+			sprites.add(sprite);
+		}
+		return new AtlasImage(sprite, bounds.x, bounds.y, image.getWidth(), image.getHeight());
+	}
+
+	/**
+	 * Copy an area of an image into a new image of the same type. Unlike a
+	 * subimage the copy doesn't keep the whole image in memory.
+	 */
+	private static BufferedImage copyArea(BufferedImage image, Rectangle area) {
+		WritableRaster raster = image.getRaster().createCompatibleWritableRaster(area.x, area.y, area.width, area.height);
+		image.copyData(raster);
+		return new BufferedImage(image.getColorModel(), raster.createWritableTranslatedChild(0, 0),
+				image.isAlphaPremultiplied(), null);
+	}
+
+	/**
+	 * Place sprites and draw the pages.
+	 */
+	private List<BufferedImage> pack(List<Sprite> sprites) {
+		List<Sprite> bySize = new ArrayList<Sprite>(sprites);
+		Collections.sort(bySize, new Comparator<Sprite>() {
+			@Override
+			public int compare(Sprite a, Sprite b) {
+				if (a.getHeight() != b.getHeight()) return b.getHeight() - a.getHeight();
+				return b.getWidth() - a.getWidth();
+			}
+		});
+		// padding right of and below every sprite, pages are cut to the used size after
+		MaxRectsPacker packer = new MaxRectsPacker(maxPageSize + padding, maxPageSize + padding);
+		for (Sprite sprite : bySize) {
+			MaxRectsPacker.Placement placement = packer.insert(sprite.getWidth() + padding, sprite.getHeight() + padding);
+			sprite.page = placement.page;
+			sprite.x = placement.x;
+			sprite.y = placement.y;
+		}
+
+		List<BufferedImage> pages = new ArrayList<BufferedImage>();
+		List<Graphics2D> graphics = new ArrayList<Graphics2D>();
+		for (int i = 0; i < packer.getNumPages(); i++) {
+			int width = Math.max(packer.getUsedSize(i).width - padding, 1);
+			int height = Math.max(packer.getUsedSize(i).height - padding, 1);
+			BufferedImage page = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			Graphics2D g = page.createGraphics();
+			g.setComposite(AlphaComposite.Src);
+			pages.add(page);
+			graphics.add(g);
+		}
+		for (Sprite sprite : sprites) {
+			graphics.get(sprite.page).drawImage(sprite.image, sprite.x, sprite.y, null);
+		}
+		for (Graphics2D g : graphics) {
+			g.dispose();
+		}
+		return pages;
+	}
+}
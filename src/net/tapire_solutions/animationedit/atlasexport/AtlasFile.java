@@ -0,0 +1,118 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.List;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+
+/**
+ * Writes the xml file of an atlas:
+ *
+ * <pre>
+ * &lt;AnimationAtlas&gt;
+ *   &lt;pages&gt;
+ *     &lt;page index="0" image="walk_0.png" width="512" height="256"/&gt;
+ *   &lt;/pages&gt;
+ *   &lt;frames&gt;
+ *     &lt;AnimationFrame image="walk1.png" page="0" x="0" y="0" width="40" height="60"
+ *         sourceWidth="64" sourceHeight="64" offsetX="12" offsetY="4" tics="1"
+ *         tag="" next="" event="" eventX="0" eventY="0"/&gt;
+ *   &lt;/frames&gt;
+ * &lt;/AnimationAtlas&gt;
+ * </pre>
+ *
+ * Frames are in sequence order. The frame attributes are those of the
+ * sequence file, tag, next and event only when set, plus where the image is
+ * in the atlas. The offsets are to the trimmed image: the frame offset plus
+ * where the trimmed image is in the frame image. Event coordinates are
+ * unchanged, they don't move with the image. Frames with identical trimmed
+ * images have the same page, x and y.
+ */
+public class AtlasFile {
+
+	static boolean write(File file, List<String> pageFileNames, List<BufferedImage> pages,
+			List<AnimationFrame> frames, List<AtlasExporter.AtlasImage> frameImages) {
+		try {
+			DocumentBuilderFactory docFactory = DocumentBuilderFactory.newInstance();
+			DocumentBuilder docBuilder = docFactory.newDocumentBuilder();
+
+			Document doc = docBuilder.newDocument();
+			Element rootElement = doc.createElement("AnimationAtlas");
+			Element pagesElement = doc.createElement("pages");
+			Element framesElement = doc.createElement("frames");
+			doc.appendChild(rootElement);
+			rootElement.appendChild(pagesElement);
+			rootElement.appendChild(framesElement);
+
+			for (int i = 0; i < pages.size(); i++) {
+				Element pageElement = doc.createElement("page");
+				pagesElement.appendChild(pageElement);
+				pageElement.setAttribute("index", Integer.toString(i));
+				pageElement.setAttribute("image", pageFileNames.get(i));
+				pageElement.setAttribute("width", Integer.toString(pages.get(i).getWidth()));
+				pageElement.setAttribute("height", Integer.toString(pages.get(i).getHeight()));
+			}
+
+			for (int i = 0; i < frames.size(); i++) {
+				AnimationFrame frame = frames.get(i);
+				AtlasExporter.AtlasImage atlasImage = frameImages.get(i);
+				AtlasExporter.Sprite sprite = atlasImage.sprite;
+				Element frameElement = doc.createElement("AnimationFrame");
+				framesElement.appendChild(frameElement);
+				frameElement.setAttribute("image", frame.getImage());
+				frameElement.setAttribute("page", Integer.toString(sprite.page));
+				frameElement.setAttribute("x", Integer.toString(sprite.x));
+				frameElement.setAttribute("y", Integer.toString(sprite.y));
+				frameElement.setAttribute("width", Integer.toString(sprite.getWidth()));
+				frameElement.setAttribute("height", Integer.toString(sprite.getHeight()));
+				frameElement.setAttribute("sourceWidth", Integer.toString(atlasImage.sourceWidth));
+				frameElement.setAttribute("sourceHeight", Integer.toString(atlasImage.sourceHeight));
+				frameElement.setAttribute("offsetX", Integer.toString(frame.getOffsetX() + atlasImage.trimX));
+				frameElement.setAttribute("offsetY", Integer.toString(frame.getOffsetY() + atlasImage.trimY));
+				frameElement.setAttribute("tics", Integer.toString(frame.getTics()));
+				if (isSet(frame.getTag())) {
+					frameElement.setAttribute("tag", frame.getTag());
+				}
+				if (isSet(frame.getNext())) {
+					frameElement.setAttribute("next", frame.getNext());
+				}
+				if (isSet(frame.getEvent())) {
+					frameElement.setAttribute("event", frame.getEvent());
+					frameElement.setAttribute("eventX", Integer.toString(frame.getEventX()));
+					frameElement.setAttribute("eventY", Integer.toString(frame.getEventY()));
+				}
+			}
+
+			TransformerFactory transformerFactory = TransformerFactory.newInstance();
+			Transformer transformer = transformerFactory.newTransformer();
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			transformer.transform(new DOMSource(doc), new StreamResult(file));
+
+		} catch (ParserConfigurationException pce) {
+			pce.printStackTrace();
+			return false;
+		} catch (TransformerException tfe) {
+			tfe.printStackTrace();
+			return false;
+		}
+		return true;
+	}
+
+	private static boolean isSet(String value) {
+		return value != null && !value.isEmpty();
+	}
+}
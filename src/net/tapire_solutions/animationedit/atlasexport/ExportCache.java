@@ -0,0 +1,258 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+
+/**
+ * On-disk cache of exported atlases, in ".atlascache" in the export
+ * directory, kept between runs.
+ *
+ * Entries are named by the SHA-1 of their inputs, so changed inputs get new
+ * entries and entries are never updated:
+ * - sequences/key/ has the exported files of a sequence, keyed by the
+ *   sequence file, its png files and the export settings.
+ * - pages/key.png has an encoded page, keyed by its pixels and the
+ *   compression level. Pages that didn't change aren't encoded again when
+ *   another page of the sequence did.
+ *
+ * Entries are written to temp files and moved in place, so interrupted or
+ * parallel exports don't leave broken entries. The cache directory can be
+ * deleted at any time. Safe to use from several threads.
+ */
+public class ExportCache {
+
+	/** Increase when the exported files change for the same inputs. */
+	private static final int formatVersion = 1;
+
+	private final File sequencesDirectory;
+	private final File pagesDirectory;
+	private final AtomicInteger sequenceHits = new AtomicInteger();
+	private final AtomicInteger sequenceMisses = new AtomicInteger();
+	private final AtomicInteger pageHits = new AtomicInteger();
+	private final AtomicInteger pageMisses = new AtomicInteger();
+
+	/**
+	 * @param exportDirectory Root export directory, the cache is put in it.
+	 */
+	public ExportCache(File exportDirectory) {
+		File directory = new File(exportDirectory, ".atlascache");
+		sequencesDirectory = new File(directory, "sequences");
+		pagesDirectory = new File(directory, "pages");
+	}
+
+	/**
+	 * @param sequenceFile Sequence xml file.
+	 * @param frames Frames of the sequence.
+	 * @param atlasName Name of the atlas files.
+	 * @param settings Export settings, see AtlasExporter.getSettingsKey().
+	 * @return Key of the exported files of a sequence.
+	 * @throws IOException If the sequence or an image couldn't be read.
+	 */
+	public static String getSequenceKey(File sequenceFile, List<AnimationFrame> frames,
+			String atlasName, String settings) throws IOException {
+		MessageDigest digest = createDigest();
+		update(digest, formatVersion + "|" + settings + "|" + atlasName);
+		update(digest, Files.readAllBytes(sequenceFile.toPath()));
+		File imageDirectory = sequenceFile.getAbsoluteFile().getParentFile();
+		LinkedHashSet<String> imageNames = new LinkedHashSet<String>();
+		for (AnimationFrame frame : frames) {
+			imageNames.add(frame.getImage());
+		}
+		for (String imageName : imageNames) {
+			String fileName = imageName.endsWith(".png") ? imageName : imageName + ".png";
+			update(digest, fileName);
+			update(digest, Files.readAllBytes(new File(imageDirectory, fileName).toPath()));
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * @return Key of an encoded page.
+	 */
+	public static String getPageKey(BufferedImage page, int compressionLevel) {
+		MessageDigest digest = createDigest();
+		update(digest, formatVersion + "|" + compressionLevel + "|" + page.getWidth() + "x" + page.getHeight());
+		int[] row = new int[page.getWidth()];
+		ByteBuffer bytes = ByteBuffer.allocate(row.length * 4);
+		for (int y = 0; y < page.getHeight(); y++) {
+			page.getRGB(0, y, row.length, 1, row, 0, row.length);
+			bytes.clear();
+			bytes.asIntBuffer().put(row);
+			digest.update(bytes.array());
+		}
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Copy the cached files of a sequence to the export directory. Files
+	 * already there with the same content are left untouched, and pages of
+	 * the atlas that aren't in the cached files are deleted.
+	 * @param atlasName Name of the atlas files.
+	 * @return True if the sequence was in the cache.
+	 */
+	public boolean restoreSequence(String key, File exportDirectory, String atlasName) {
+		File entry = new File(sequencesDirectory, key);
+		File[] files = entry.listFiles();
+		if (files == null) {
+			sequenceMisses.incrementAndGet();
+			return false;
+		}
+		try {
+			if (!exportDirectory.isDirectory() && !exportDirectory.mkdirs()) {
+				throw new IOException("Couldn't create directory " + exportDirectory);
+			}
+			List<String> fileNames = new ArrayList<String>();
+			for (File file : files) {
+				File target = new File(exportDirectory, file.getName());
+				if (!isSameContent(file, target)) {
+					Files.copy(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+				}
+				fileNames.add(file.getName());
+			}
+			AtlasExporter.deleteStalePages(exportDirectory, atlasName, fileNames);
+		} catch (IOException e) {
+			System.out.println("Couldn't restore cached export " + key + ": " + e.getMessage());
+			sequenceMisses.incrementAndGet();
+			return false;
+		}
+		sequenceHits.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Store the exported files of a sequence.
+	 * @param fileNames Files in the export directory.
+	 */
+	public void storeSequence(String key, File exportDirectory, List<String> fileNames) {
+		File entry = new File(sequencesDirectory, key);
+		if (entry.isDirectory()) return;
+		File temp = null;
+		try {
+			sequencesDirectory.mkdirs();
+			temp = Files.createTempDirectory(sequencesDirectory.toPath(), key).toFile();
+			for (String fileName : fileNames) {
+				Files.copy(new File(exportDirectory, fileName).toPath(), new File(temp, fileName).toPath());
+			}
+			Files.move(temp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+			temp = null;
+		} catch (IOException e) {
+			// unless stored by another export of the same inputs
+			if (!entry.isDirectory()) {
+				System.out.println("Couldn't cache export " + key + ": " + e.getMessage());
+			}
+		} finally {
+			if (temp != null) {
+				deleteDirectory(temp);
+			}
+		}
+	}
+
+	/**
+	 * @return Encoded page, or null if not cached.
+	 */
+	public byte[] getPage(String key) {
+		File file = new File(pagesDirectory, key + ".png");
+		if (file.isFile()) {
+			try {
+				byte[] png = Files.readAllBytes(file.toPath());
+				pageHits.incrementAndGet();
+				return png;
+			} catch (IOException e) {
+				System.out.println("Couldn't read cached page " + key + ": " + e.getMessage());
+			}
+		}
+		pageMisses.incrementAndGet();
+		return null;
+	}
+
+	public void putPage(String key, byte[] png) {
+		File file = new File(pagesDirectory, key + ".png");
+		if (file.isFile()) return;
+		File temp = null;
+		try {
+			pagesDirectory.mkdirs();
+			temp = File.createTempFile(key, ".tmp", pagesDirectory);
+			Files.write(temp.toPath(), png);
+			try {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			temp = null;
+		} catch (IOException e) {
+			System.out.println("Couldn't cache page " + key + ": " + e.getMessage());
+		} finally {
+			if (temp != null) {
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return Hits and misses since the cache was created.
+	 */
+	public String getStatistics() {
+		return "sequence cache " + sequenceHits.get() + " hits, " + sequenceMisses.get() + " misses; page cache "
+				+ pageHits.get() + " hits, " + pageMisses.get() + " misses";
+	}
+
+	private static boolean isSameContent(File file, File other) throws IOException {
+		if (!other.isFile() || file.length() != other.length()) {
+			return false;
+		}
+		return Arrays.equals(Files.readAllBytes(file.toPath()), Files.readAllBytes(other.toPath()));
+	}
+
+	private static void deleteDirectory(File directory) {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private static MessageDigest createDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-1
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void update(MessageDigest digest, String value) {
+		digest.update(value.getBytes(StandardCharsets.UTF_8));
+		// separator, so "ab" + "c" and "a" + "bc" differ
+		digest.update((byte)0);
+	}
+
+	private static void update(MessageDigest digest, byte[] bytes) {
+		digest.update(ByteBuffer.allocate(8).putLong(bytes.length).array());
+		digest.update(bytes);
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b & 0xFF));
+		}
+		return hex.toString();
+	}
+}
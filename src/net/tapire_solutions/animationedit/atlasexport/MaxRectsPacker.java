@@ -0,0 +1,143 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Packs rectangles into pages with the MaxRects algorithm.
+ *
+ * Each page keeps a list of maximal free rectangles, which may overlap. A new
+ * rectangle goes where it leaves the shortest leftover side (best short
+ * side fit), and the free rectangles it overlaps are split around it.
+ * Rectangles are not rotated. A new page is started when a rectangle doesn't
+ * fit in any page, larger than the page size if the rectangle is.
+ *
+ * Inserting the largest rectangles first packs tightest.
+ */
+public class MaxRectsPacker {
+
+	public static class Placement {
+		public final int page;
+		public final int x;
+		public final int y;
+		public Placement(int page, int x, int y) {
+			this.page = page;
+			this.x = x;
+			this.y = y;
+		}
+	}
+
+	private final int pageWidth;
+	private final int pageHeight;
+	private final List<List<Rectangle>> freeRectangles = new ArrayList<List<Rectangle>>();
+	private final List<Dimension> usedSizes = new ArrayList<Dimension>();
+
+	public MaxRectsPacker(int pageWidth, int pageHeight) {
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+	}
+
+	/**
+	 * Place a rectangle.
+	 * @return Page and position of the rectangle.
+	 */
+	public Placement insert(int width, int height) {
+		for (int page = 0; page < freeRectangles.size(); page++) {
+			Rectangle position = findPosition(freeRectangles.get(page), width, height);
+			if (position != null) {
+				place(page, position);
+				return new Placement(page, position.x, position.y);
+			}
+		}
+		List<Rectangle> pageFreeRectangles = new ArrayList<Rectangle>();
+		pageFreeRectangles.add(new Rectangle(0, 0, Math.max(pageWidth, width), Math.max(pageHeight, height)));
+		freeRectangles.add(pageFreeRectangles);
+		usedSizes.add(new Dimension(0, 0));
+		int page = freeRectangles.size() - 1;
+		place(page, new Rectangle(0, 0, width, height));
+		return new Placement(page, 0, 0);
+	}
+
+	public int getNumPages() {
+		return freeRectangles.size();
+	}
+
+	/**
+	 * @return Size of the area used on a page.
+	 */
+	public Dimension getUsedSize(int page) {
+		return new Dimension(usedSizes.get(page));
+	}
+
+	private static Rectangle findPosition(List<Rectangle> free, int width, int height) {
+		Rectangle best = null;
+		int bestShortSide = Integer.MAX_VALUE;
+		int bestLongSide = Integer.MAX_VALUE;
+		for (Rectangle rect : free) {
+			if (width > rect.width || height > rect.height) continue;
+			int leftoverX = rect.width - width;
+			int leftoverY = rect.height - height;
+			int shortSide = Math.min(leftoverX, leftoverY);
+			int longSide = Math.max(leftoverX, leftoverY);
+			if (shortSide < bestShortSide || (shortSide == bestShortSide && longSide < bestLongSide)) {
+				best = new Rectangle(rect.x, rect.y, width, height);
+				bestShortSide = shortSide;
+				bestLongSide = longSide;
+			}
+		}
+		return best;
+	}
+
+	private void place(int page, Rectangle used) {
+		List<Rectangle> free = freeRectangles.get(page);
+		List<Rectangle> split = new ArrayList<Rectangle>();
+		for (Rectangle rect : free) {
+			if (!rect.intersects(used)) {
+				split.add(rect);
+				continue;
+			}
+			// the parts of the free rectangle left, right, above and below the used one
+			if (used.x > rect.x) {
+				split.add(new Rectangle(rect.x, rect.y, used.x - rect.x, rect.height));
+			}
+			if (used.x + used.width < rect.x + rect.width) {
+				split.add(new Rectangle(used.x + used.width, rect.y,
+						rect.x + rect.width - used.x - used.width, rect.height));
+			}
+			if (used.y > rect.y) {
+				split.add(new Rectangle(rect.x, rect.y, rect.width, used.y - rect.y));
+			}
+			if (used.y + used.height < rect.y + rect.height) {
+				split.add(new Rectangle(rect.x, used.y + used.height,
+						rect.width, rect.y + rect.height - used.y - used.height));
+			}
+		}
+		freeRectangles.set(page, removeContained(split));
+		Dimension usedSize = usedSizes.get(page);
+		usedSize.width = Math.max(usedSize.width, used.x + used.width);
+		usedSize.height = Math.max(usedSize.height, used.y + used.height);
+	}
+
+	/**
+	 * @return Rectangles that aren't inside another one.
+	 */
+	private static List<Rectangle> removeContained(List<Rectangle> rects) {
+		List<Rectangle> result = new ArrayList<Rectangle>();
+		for (int i = 0; i < rects.size(); i++) {
+			Rectangle rect = rects.get(i);
+			boolean isContained = false;
+			for (int j = 0; j < rects.size() && !isContained; j++) {
+				if (i == j) continue;
+				Rectangle other = rects.get(j);
+				// of two equal rectangles, keep the first
+				isContained = other.contains(rect) && (!rect.equals(other) || j < i);
+			}
+			if (!isContained) {
+				result.add(rect);
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,155 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+import java.awt.AlphaComposite;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws brush strokes for the pen, erase and line tools.
+ *
+ * Hard brushes are drawn pixel exact: the line is walked with Bresenham and a
+ * square or round brush stamp is written straight into the pixel array at each
+ * step. Stamps are cached per size and shape. Smooth brushes are drawn
+ * antialiased with Graphics2D.
+ */
+class BrushRasterizer {
+
+	/**
+	 * Pixels covered by a brush, as one span per row.
+	 */
+	private static class Stamp {
+		public final int size;
+		// offset of the first row and column from the brush position
+		public final int first;
+		public final int[] spanStart;
+		public final int[] spanEnd;
+
+		public Stamp(int size, boolean isRound) {
+			this.size = size;
+			first = -(size - 1) / 2;
+			spanStart = new int[size];
+			spanEnd = new int[size];
+			double center = (size - 1) / 2.0;
+			// slightly smaller than the brush radius, so small round brushes don't become squares
+			double radiusSquared = size * size / 4.0 - 0.5;
+			for (int row = 0; row < size; row++) {
+				int start = 0;
+				int end = size;
+				if (isRound && size > 2) {
+					double dy = row - center;
+					while (start < end && (start - center) * (start - center) + dy * dy > radiusSquared) {
+						start++;
+					}
+					end = size - start;
+				}
+				spanStart[row] = first + start;
+				spanEnd[row] = first + end;
+			}
+		}
+	}
+
+	private static final Map<Integer, Stamp> stamps = new HashMap<Integer, Stamp>();
+
+	private static synchronized Stamp getStamp(int size, boolean isRound) {
+		Integer key = size * 2 + (isRound ? 1 : 0);
+		Stamp stamp = stamps.get(key);
+		if (stamp == null) {
+			stamp = new Stamp(size, isRound);
+			stamps.put(key, stamp);
+		}
+		return stamp;
+	}
+
+	/**
+	 * Draw a line with a hard brush. Pixels are replaced, not blended.
+	 * @param argb Colour, non-premultiplied ARGB. 0 erases.
+	 * @param brushWidth Brush width in pixels.
+	 * @return Area changed, or null if the line is outside the image.
+	 */
+	public static Rectangle drawLine(BufferedImage image, int x0, int y0, int x1, int y1,
+			int argb, float brushWidth, boolean isRound) {
+		Stamp stamp = getStamp(Math.max(1, Math.round(brushWidth)), isRound);
+		Rectangle area = getLineBounds(x0, y0, x1, y1, stamp.first, stamp.size)
+				.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+		if (area.isEmpty()) {
+			return null;
+		}
+
+		IntPixelAccess access = new IntPixelAccess(image);
+		int pixel = access.fromArgb(argb);
+		int dx = Math.abs(x1 - x0);
+		int dy = -Math.abs(y1 - y0);
+		int stepX = x0 < x1 ? 1 : -1;
+		int stepY = y0 < y1 ? 1 : -1;
+		int error = dx + dy;
+		int x = x0;
+		int y = y0;
+		while (true) {
+			drawStamp(access, stamp, x, y, pixel);
+			if (x == x1 && y == y1) break;
+			int error2 = 2 * error;
+			if (error2 >= dy) {
+				error += dy;
+				x += stepX;
+			}
+			if (error2 <= dx) {
+				error += dx;
+				y += stepY;
+			}
+		}
+		access.writeBack(area);
+		return area;
+	}
+
+	private static void drawStamp(IntPixelAccess access, Stamp stamp, int x, int y, int pixel) {
+		int[] pixels = access.pixels;
+		for (int row = 0; row < stamp.size; row++) {
+			int pixelY = y + stamp.first + row;
+			if (pixelY < 0 || pixelY >= access.height) continue;
+			int start = Math.max(0, x + stamp.spanStart[row]);
+			int end = Math.min(access.width, x + stamp.spanEnd[row]);
+			int rowOffset = access.indexOf(0, pixelY);
+			for (int i = rowOffset + start; i < rowOffset + end; i++) {
+				pixels[i] = pixel;
+			}
+		}
+	}
+
+	/**
+	 * Draw an antialiased line with Graphics2D.
+	 * @param color Colour, or null to erase.
+	 * @return Area that may have changed, or null if the line is outside the image.
+	 */
+	public static Rectangle drawSmoothLine(BufferedImage image, int x0, int y0, int x1, int y1,
+			Color color, float brushWidth) {
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setStroke(new BasicStroke(brushWidth));
+			if (color == null) {
+				g.setComposite(AlphaComposite.Clear);
+			} else {
+				g.setColor(color);
+			}
+			g.drawLine(x0, y0, x1, y1);
+		} finally {
+			g.dispose();
+		}
+		// the stroke and its antialiasing reach at most half the width plus one pixel from the line
+		int margin = (int)Math.ceil(brushWidth / 2) + 1;
+		Rectangle area = getLineBounds(x0, y0, x1, y1, -margin, 2 * margin + 1)
+				.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+		return area.isEmpty() ? null : area;
+	}
+
+	private static Rectangle getLineBounds(int x0, int y0, int x1, int y1, int first, int size) {
+		return new Rectangle(Math.min(x0, x1) + first, Math.min(y0, y1) + first,
+				Math.abs(x1 - x0) + size, Math.abs(y1 - y0) + size);
+	}
+}
@@ -1,21 +1,46 @@
 package net.tapire_solutions.animationedit.drawingtools;
 
-import java.awt.Color;
-import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.util.Stack;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import net.tapire_solutions.animationedit.drawingtools.FillModeSelector.FillMode;
 
 /**
  * Bucket / flood fill.
+ *
+ * Fills one horizontal span at a time, working directly on the pixel array of
+ * the image. Spans still to be filled are kept in a reusable int stack, and
+ * filled pixels are marked in a bit mask.
+ *
+ * Can also replace the clicked colour everywhere in the frame or in all
+ * frames, see FillModeSelector.
  */
 public class BucketDrawingTool implements DrawingTool {
 
 	private CurrentColorSelector colorSelector;
 	private ColorToleranceSelector colorToleranceSelector;
+	private FillModeSelector fillModeSelector;
+	private FrameImageProvider frameImageProvider;
+	// packed x + y * width of span seeds, reused between fills
+	private int[] seeds = new int[1024];
+	private BitSet mask = new BitSet();
 
 	public BucketDrawingTool(CurrentColorSelector colorSelector, ColorToleranceSelector colorToleranceSelector) {
+		this(colorSelector, colorToleranceSelector, null, null);
+	}
+
+	/**
+	 * @param fillModeSelector Selects the fill mode, or null to always fill areas.
+	 * @param frameImageProvider Images of all frames, needed to replace colours in all frames.
+	 */
+	public BucketDrawingTool(CurrentColorSelector colorSelector, ColorToleranceSelector colorToleranceSelector,
+			FillModeSelector fillModeSelector, FrameImageProvider frameImageProvider) {
 		this.colorSelector = colorSelector;
 		this.colorToleranceSelector = colorToleranceSelector;
+		this.fillModeSelector = fillModeSelector;
+		this.frameImageProvider = frameImageProvider;
 	}
 
 	private boolean isInImage(int x, int y, BufferedImage image) {
@@ -23,72 +48,136 @@ public class BucketDrawingTool implements DrawingTool {
 			return true;
 		return false;
 	}
-	
-	private boolean isEqualColor(int rgb1, int rgb2, float tolerance) {
-		Color c1 = new Color(rgb1, true);
-		Color c2 = new Color(rgb2, true);
-		int tolerance256 = (int) (tolerance * 256);
-		if (Math.abs(c1.getRed() - c2.getRed()) > tolerance256) return false;
-		if (Math.abs(c1.getGreen() - c2.getGreen()) > tolerance256) return false;
-		if (Math.abs(c1.getBlue() - c2.getBlue()) > tolerance256) return false;
-		if (c1.getAlpha() == 0 && c2.getAlpha() != 0) return false;
-		if (c1.getAlpha() != 0 && c2.getAlpha() == 0) return false;
-		return true;
-	}
 
-	private boolean addToBorderAndMaskIfEqual(Stack<int[]> border, int oldColor, BufferedImage image, 
-			int x, int y, boolean[][] mask, float tolerance) {
-		if (isInImage(x, y, image) && isEqualColor(image.getRGB(x, y), oldColor, tolerance) && !mask[y][x] == true) {
-			mask[y][x] = true;
-			border.push(new int[] {x, y});
-			return true;
+	/**
+	 * Fill the area connected to a pixel that has the same colour, within the
+	 * colour tolerance.
+	 * @return Area that was changed, or null if the pixel is outside the image.
+	 */
+	public Rectangle fill(BufferedImage image, int x, int y) {
+		if (!isInImage(x, y, image)) return null;
+
+		IntPixelAccess access = new IntPixelAccess(image);
+		int[] pixels = access.pixels;
+		int width = access.width;
+		int height = access.height;
+		ColorMatcher matcher = new ColorMatcher(access.toArgb(pixels[access.indexOf(x, y)]),
+				colorToleranceSelector.getColorTolerance());
+		int fillPixel = access.fromArgb(colorSelector.getColor().getRGB());
+
+		mask.clear();
+		int numSeeds = 0;
+		seeds[numSeeds++] = x + y * width;
+		int minX = x, maxX = x, minY = y, maxY = y;
+
+		while (numSeeds > 0) {
+			int seed = seeds[--numSeeds];
+			int seedX = seed % width;
+			int seedY = seed / width;
+			int maskRow = seedY * width;
+			if (mask.get(maskRow + seedX)) continue;
+
+			// extend the span left and right from the seed
+			int rowOffset = access.indexOf(0, seedY);
+			int left = seedX;
+			while (left > 0 && !mask.get(maskRow + left - 1) && matcher.matches(access.toArgb(pixels[rowOffset + left - 1]))) {
+				left--;
+			}
+			int right = seedX;
+			while (right < width - 1 && !mask.get(maskRow + right + 1) && matcher.matches(access.toArgb(pixels[rowOffset + right + 1]))) {
+				right++;
+			}
+			mask.set(maskRow + left, maskRow + right + 1);
+			Arrays.fill(pixels, rowOffset + left, rowOffset + right + 1, fillPixel);
+			minX = Math.min(minX, left);
+			maxX = Math.max(maxX, right);
+			minY = Math.min(minY, seedY);
+			maxY = Math.max(maxY, seedY);
+
+			// add one seed per matching run in the rows above and below
+			for (int neighbourY = seedY - 1; neighbourY <= seedY + 1; neighbourY += 2) {
+				if (neighbourY < 0 || neighbourY >= height) continue;
+				int neighbourMaskRow = neighbourY * width;
+				int neighbourOffset = access.indexOf(0, neighbourY);
+				boolean isInRun = false;
+				for (int xi = left; xi <= right; xi++) {
+					boolean isMatch = !mask.get(neighbourMaskRow + xi)
+							&& matcher.matches(access.toArgb(pixels[neighbourOffset + xi]));
+					if (isMatch && !isInRun) {
+						if (numSeeds == seeds.length) {
+							seeds = Arrays.copyOf(seeds, seeds.length * 2);
+						}
+						seeds[numSeeds++] = xi + neighbourMaskRow;
+					}
+					isInRun = isMatch;
+				}
+			}
 		}
-		return false;
+
+		Rectangle filledArea = new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1);
+		access.writeBack(filledArea);
+		return filledArea;
 	}
 
-	public void fill(BufferedImage image, int x, int y) {
-		boolean[][] mask = new boolean[image.getHeight()][image.getHeight()];
+	/**
+	 * Replace the colour of a pixel everywhere in the image, within the colour tolerance.
+	 */
+	public void replaceColor(BufferedImage image, int x, int y) {
+		if (!isInImage(x, y, image)) return;
+		ColorReplacer.replace(image, createMatcher(image, x, y), colorSelector.getColor().getRGB());
+	}
 
+	/**
+	 * Replace the colour of a pixel in the images of all frames, within the colour tolerance.
+	 *
+	 * Images are done one at a time, each split into bands of rows, and set
+	 * as modified before the next is loaded, so the image cache keeps them
+	 * until saved and never has to hold more than one unmodified image.
+	 */
+	public void replaceColorInAllFrames(BufferedImage image, int x, int y) {
 		if (!isInImage(x, y, image)) return;
-		
-		float tolerance = colorToleranceSelector.getColorTolerance();
-		int fillColor = colorSelector.getColor().getRGB();
-		int oldColor = image.getRGB(x, y);
-		mask[y][x] = true;
-		Stack<int[]> border = new Stack<int[]>();
-		border.push(new int[] {x, y});
-		
-		// mark tiles as belonging to area
-		do {
-			int[] currentPixel = border.pop();
-			addToBorderAndMaskIfEqual(border, oldColor, image, currentPixel[0], currentPixel[1]+1, mask, tolerance);
-			addToBorderAndMaskIfEqual(border, oldColor, image, currentPixel[0], currentPixel[1]-1, mask, tolerance);
-			addToBorderAndMaskIfEqual(border, oldColor, image, currentPixel[0]+1, currentPixel[1], mask, tolerance);
-			addToBorderAndMaskIfEqual(border, oldColor, image, currentPixel[0]-1, currentPixel[1], mask, tolerance);
-		} while (border.size() > 0);
-
-		// change tile values
-		for (int xi = 0; xi < mask[0].length; xi++) {
-			for (int yi = 0; yi < mask.length; yi++) {
-				if (mask[yi][xi] == true)
-					image.setRGB(xi, yi, fillColor);
-			}
+		ColorMatcher matcher = createMatcher(image, x, y);
+		int fillArgb = colorSelector.getColor().getRGB();
+		long startTime = System.nanoTime();
+		int numReplaced = 0;
+		for (String imageName : frameImageProvider.getFrameImageNames()) {
+			BufferedImage frameImage = frameImageProvider.getFrameImage(imageName);
+			if (frameImage == null) continue;
+			ColorReplacer.replace(frameImage, matcher, fillArgb);
+			frameImageProvider.setFrameImageModified(imageName);
+			numReplaced++;
 		}
+		System.out.println("Replaced color in " + numReplaced + " images in " 
+				+ (System.nanoTime() - startTime) / 1000000 + " ms.");
+	}
+
+	private ColorMatcher createMatcher(BufferedImage image, int x, int y) {
+		return new ColorMatcher(image.getRGB(x, y), colorToleranceSelector.getColorTolerance());
 	}
 
 	@Override
-	public void onMouseDown(BufferedImage image, int x, int y) {
-		Graphics2D g = (Graphics2D) image.getGraphics();
-		g.setColor(colorSelector.getColor());
-		fill(image, x, y);
+	public Rectangle onMouseDown(BufferedImage image, int x, int y) {
+		FillMode fillMode = fillModeSelector == null ? FillMode.AREA : fillModeSelector.getFillMode();
+		if (fillMode == FillMode.AREA || (fillMode == FillMode.COLOR_IN_ALL_FRAMES && frameImageProvider == null)) {
+			return fill(image, x, y);
+		}
+		if (!isInImage(x, y, image)) return null;
+		if (fillMode == FillMode.COLOR_IN_ALL_FRAMES) {
+			replaceColorInAllFrames(image, x, y);
+		} else {
+			replaceColor(image, x, y);
+		}
+		return new Rectangle(0, 0, image.getWidth(), image.getHeight());
 	}
 
 	@Override
-	public void onMouseRelease(BufferedImage image, int x, int y) {
+	public Rectangle onMouseRelease(BufferedImage image, int x, int y) {
+		return null;
 	}
 
 	@Override
-	public void onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+	public Rectangle onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+		return null;
 	}
 
 	@Override
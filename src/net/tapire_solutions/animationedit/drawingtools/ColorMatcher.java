@@ -0,0 +1,31 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+/**
+ * Tells if colours are close enough to a reference colour to be filled.
+ *
+ * Each of red, green and blue may differ by the tolerance. Alpha only has to
+ * agree on whether the colour is fully transparent or not.
+ */
+class ColorMatcher {
+
+	private final int argb;
+	private final int tolerance256;
+
+	/**
+	 * @param argb Reference colour, non-premultiplied ARGB.
+	 * @param tolerance Tolerance from 0 to 1.
+	 */
+	public ColorMatcher(int argb, float tolerance) {
+		this.argb = argb;
+		this.tolerance256 = (int) (tolerance * 256);
+	}
+
+	public boolean matches(int otherArgb) {
+		if (otherArgb == argb) return true;
+		if (((argb >>> 24) == 0) != ((otherArgb >>> 24) == 0)) return false;
+		if (Math.abs(((argb >> 16) & 0xFF) - ((otherArgb >> 16) & 0xFF)) > tolerance256) return false;
+		if (Math.abs(((argb >> 8) & 0xFF) - ((otherArgb >> 8) & 0xFF)) > tolerance256) return false;
+		if (Math.abs((argb & 0xFF) - (otherArgb & 0xFF)) > tolerance256) return false;
+		return true;
+	}
+}
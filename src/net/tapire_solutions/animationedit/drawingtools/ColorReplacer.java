@@ -0,0 +1,103 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Replaces every pixel that matches a colour, in one or several images.
+ *
+ * Runs as a fork/join pass: one task per image, split into bands of rows
+ * until each band is small enough to be replaced by one thread.
+ */
+class ColorReplacer {
+
+	private static final int minPixelsPerTask = 64 * 1024;
+	private static final ForkJoinPool pool = new ForkJoinPool();
+
+	/**
+	 * Replace colours in an image.
+	 * @param image Image to change.
+	 * @param matcher Colours to replace.
+	 * @param fillArgb Colour to replace with, non-premultiplied ARGB.
+	 */
+	public static void replace(BufferedImage image, ColorMatcher matcher, int fillArgb) {
+		List<BufferedImage> images = new ArrayList<BufferedImage>();
+		images.add(image);
+		replace(images, matcher, fillArgb);
+	}
+
+	/**
+	 * Replace colours in images.
+	 * @param images Images to change. Each image must be listed once.
+	 * @param matcher Colours to replace.
+	 * @param fillArgb Colour to replace with, non-premultiplied ARGB.
+	 */
+	public static void replace(List<BufferedImage> images, ColorMatcher matcher, int fillArgb) {
+		List<RowBandTask> tasks = new ArrayList<RowBandTask>();
+		List<IntPixelAccess> accesses = new ArrayList<IntPixelAccess>();
+		for (BufferedImage image : images) {
+			IntPixelAccess access = new IntPixelAccess(image);
+			accesses.add(access);
+			tasks.add(new RowBandTask(access, matcher, access.fromArgb(fillArgb), 0, access.height));
+		}
+		pool.invoke(new ImagesTask(tasks));
+		for (IntPixelAccess access : accesses) {
+			access.writeBack(new Rectangle(0, 0, access.width, access.height));
+		}
+	}
+
+	private static class ImagesTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<RowBandTask> tasks;
+
+		public ImagesTask(List<RowBandTask> tasks) {
+			this.tasks = tasks;
+		}
+
+		@Override
+		protected void compute() {
+			invokeAll(tasks);
+		}
+	}
+
+	private static class RowBandTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final IntPixelAccess access;
+		private final ColorMatcher matcher;
+		private final int fillPixel;
+		private final int startY;
+		private final int endY;
+
+		public RowBandTask(IntPixelAccess access, ColorMatcher matcher, int fillPixel, int startY, int endY) {
+			this.access = access;
+			this.matcher = matcher;
+			this.fillPixel = fillPixel;
+			this.startY = startY;
+			this.endY = endY;
+		}
+
+		@Override
+		protected void compute() {
+			int numRows = endY - startY;
+			if (numRows > 1 && (long)numRows * access.width > minPixelsPerTask) {
+				int middleY = startY + numRows / 2;
+				invokeAll(new RowBandTask(access, matcher, fillPixel, startY, middleY),
+						new RowBandTask(access, matcher, fillPixel, middleY, endY));
+				return;
+			}
+			int[] pixels = access.pixels;
+			for (int y = startY; y < endY; y++) {
+				int rowOffset = access.indexOf(0, y);
+				for (int i = rowOffset; i < rowOffset + access.width; i++) {
+					if (matcher.matches(access.toArgb(pixels[i]))) {
+						pixels[i] = fillPixel;
+					}
+				}
+			}
+		}
+	}
+}
@@ -3,4 +3,5 @@ package net.tapire_solutions.animationedit.drawingtools;
 public interface CurrentBrushSelector {
 	public float getBrushWidth();
 	public boolean getBrushIsSmooth();
+	public boolean getBrushIsRound();
 }
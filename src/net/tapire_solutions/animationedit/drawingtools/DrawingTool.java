@@ -1,10 +1,15 @@
 package net.tapire_solutions.animationedit.drawingtools;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
+/**
+ * Tool for drawing in a frame image. Each call returns the area of the image
+ * it changed, or null if it changed nothing.
+ */
 public interface DrawingTool {
-	public void onMouseDown(BufferedImage image, int x, int y);
-	public void onMouseRelease(BufferedImage image, int x, int y);
-	public void onMouseMoveWhileDown(BufferedImage image, int x, int y);
+	public Rectangle onMouseDown(BufferedImage image, int x, int y);
+	public Rectangle onMouseRelease(BufferedImage image, int x, int y);
+	public Rectangle onMouseMoveWhileDown(BufferedImage image, int x, int y);
 	public void onSelectAnotherTool();
 }
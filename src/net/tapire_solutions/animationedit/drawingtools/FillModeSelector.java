@@ -0,0 +1,15 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+public interface FillModeSelector {
+
+	public enum FillMode {
+		/** Fill the connected area of the clicked colour. */
+		AREA,
+		/** Replace the clicked colour everywhere in the current frame. */
+		COLOR_IN_FRAME,
+		/** Replace the clicked colour in all frames of the sequence. */
+		COLOR_IN_ALL_FRAMES
+	}
+
+	public FillMode getFillMode();
+}
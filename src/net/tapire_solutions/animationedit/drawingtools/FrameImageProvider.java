@@ -0,0 +1,21 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+import java.awt.image.BufferedImage;
+import java.util.Collection;
+
+/**
+ * Gives tools access to the images of all frames, for edits that span the sequence.
+ */
+public interface FrameImageProvider {
+	/**
+	 * @return Names of the images used by the frames, each name once.
+	 */
+	public Collection<String> getFrameImageNames();
+
+	/**
+	 * @return Image, or null if it can't be loaded.
+	 */
+	public BufferedImage getFrameImage(String imageName);
+
+	public void setFrameImageModified(String imageName);
+}
@@ -0,0 +1,109 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+
+/**
+ * Direct access to the int pixels of an image.
+ *
+ * Images of type TYPE_INT_ARGB, TYPE_INT_ARGB_PRE and TYPE_INT_RGB are accessed
+ * through their backing array. Other images are copied with one bulk getRGB
+ * call and must be written back with writeBack() when done.
+ *
+ * Pixels are stored in the format of the image. Use toArgb() and fromArgb()
+ * to convert to and from non-premultiplied ARGB.
+ */
+class IntPixelAccess {
+
+	public final int[] pixels;
+	public final int offset;
+	public final int stride;
+	public final int width;
+	public final int height;
+	private final BufferedImage image;
+	private final int imageType;
+	private final boolean isCopy;
+
+	public IntPixelAccess(BufferedImage image) {
+		this.image = image;
+		width = image.getWidth();
+		height = image.getHeight();
+		imageType = image.getType();
+		WritableRaster raster = image.getRaster();
+		boolean isIntImage = (imageType == BufferedImage.TYPE_INT_ARGB
+				|| imageType == BufferedImage.TYPE_INT_ARGB_PRE
+				|| imageType == BufferedImage.TYPE_INT_RGB)
+				&& raster.getDataBuffer() instanceof DataBufferInt
+				&& raster.getSampleModel() instanceof SinglePixelPackedSampleModel;
+		if (isIntImage) {
+			DataBufferInt dataBuffer = (DataBufferInt)raster.getDataBuffer();
+			pixels = dataBuffer.getData();
+			stride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+			offset = dataBuffer.getOffset()
+					- raster.getSampleModelTranslateY() * stride
+					- raster.getSampleModelTranslateX();
+			isCopy = false;
+		} else {
+			pixels = image.getRGB(0, 0, width, height, null, 0, width);
+			stride = width;
+			offset = 0;
+			isCopy = true;
+		}
+	}
+
+	public int indexOf(int x, int y) {
+		return offset + y * stride + x;
+	}
+
+	/**
+	 * Convert a stored pixel to non-premultiplied ARGB.
+	 */
+	public int toArgb(int pixel) {
+		if (isCopy || imageType == BufferedImage.TYPE_INT_ARGB) {
+			return pixel;
+		}
+		if (imageType == BufferedImage.TYPE_INT_RGB) {
+			return pixel | 0xFF000000;
+		}
+		int alpha = pixel >>> 24;
+		if (alpha == 255 || alpha == 0) {
+			return pixel;
+		}
+		int r = Math.min(255, ((pixel >> 16) & 0xFF) * 255 / alpha);
+		int g = Math.min(255, ((pixel >> 8) & 0xFF) * 255 / alpha);
+		int b = Math.min(255, (pixel & 0xFF) * 255 / alpha);
+		return (alpha << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Convert non-premultiplied ARGB to a pixel that can be stored.
+	 */
+	public int fromArgb(int argb) {
+		if (isCopy || imageType == BufferedImage.TYPE_INT_ARGB) {
+			return argb;
+		}
+		if (imageType == BufferedImage.TYPE_INT_RGB) {
+			return argb & 0xFFFFFF;
+		}
+		int alpha = argb >>> 24;
+		if (alpha == 255) {
+			return argb;
+		}
+		int r = ((argb >> 16) & 0xFF) * alpha / 255;
+		int g = ((argb >> 8) & 0xFF) * alpha / 255;
+		int b = (argb & 0xFF) * alpha / 255;
+		return (alpha << 24) | (r << 16) | (g << 8) | b;
+	}
+
+	/**
+	 * Write changed pixels back to the image, only needed for copied images.
+	 * @param area Area that may have changed, or null if nothing changed.
+	 */
+	public void writeBack(Rectangle area) {
+		if (!isCopy || area == null) return;
+		image.setRGB(area.x, area.y, area.width, area.height, pixels, area.y * stride + area.x, stride);
+	}
+}
@@ -1,9 +1,7 @@
 package net.tapire_solutions.animationedit.drawingtools;
 
 
-import java.awt.BasicStroke;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -22,28 +20,30 @@ public class LineDrawingTool implements DrawingTool {
 	}
 	
 	@Override
-	public void onMouseDown(BufferedImage image, int x, int y) {
+	public Rectangle onMouseDown(BufferedImage image, int x, int y) {
+		Rectangle changedArea = null;
 		if (lastMouseDownX != -1) {
-			Graphics2D g = (Graphics2D)image.getGraphics();
-			g.setColor(colorSelector.getColor());
 			if (brushSelector.getBrushIsSmooth()) {
-				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+				changedArea = BrushRasterizer.drawSmoothLine(image, lastMouseDownX, lastMouseDownY, x, y, 
+						colorSelector.getColor(), brushSelector.getBrushWidth());
 			} else {
-				g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+				changedArea = BrushRasterizer.drawLine(image, lastMouseDownX, lastMouseDownY, x, y, 
+						colorSelector.getColor().getRGB(), brushSelector.getBrushWidth(), brushSelector.getBrushIsRound());
 			}
-			g.setStroke(new BasicStroke(brushSelector.getBrushWidth()));
-			g.drawLine(lastMouseDownX, lastMouseDownY, x, y);
 		}
 		lastMouseDownX = x;
 		lastMouseDownY = y;
+		return changedArea;
 	}
 
 	@Override
-	public void onMouseRelease(BufferedImage image, int x, int y) {
+	public Rectangle onMouseRelease(BufferedImage image, int x, int y) {
+		return null;
 	}
 
 	@Override
-	public void onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+	public Rectangle onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+		return null;
 	}
 	
 	@Override
@@ -1,13 +1,11 @@
 package net.tapire_solutions.animationedit.drawingtools;
 
 
-import java.awt.BasicStroke;
-import java.awt.Graphics2D;
-import java.awt.RenderingHints;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
- * Draws 1 pixel wide.
+ * Draws with the current brush.
  */
 public class PenDrawingTool implements DrawingTool {
 
@@ -21,41 +19,36 @@ public class PenDrawingTool implements DrawingTool {
 		this.brushSelector = brushSelector;
 	}
 	
-	@Override
-	public void onMouseDown(BufferedImage image, int x, int y) {
-		Graphics2D g = (Graphics2D)image.getGraphics();
-		g.setColor(colorSelector.getColor());
+	private Rectangle drawLine(BufferedImage image, int x0, int y0, int x1, int y1) {
 		if (brushSelector.getBrushIsSmooth()) {
-			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		} else {
-			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+			return BrushRasterizer.drawSmoothLine(image, x0, y0, x1, y1, 
+					colorSelector.getColor(), brushSelector.getBrushWidth());
 		}
-		g.setStroke(new BasicStroke(brushSelector.getBrushWidth()));
-		g.drawLine(x, y, x, y);
+		return BrushRasterizer.drawLine(image, x0, y0, x1, y1, colorSelector.getColor().getRGB(), 
+				brushSelector.getBrushWidth(), brushSelector.getBrushIsRound());
+	}
+	
+	@Override
+	public Rectangle onMouseDown(BufferedImage image, int x, int y) {
 		lastMouseDownX = x;
 		lastMouseDownY = y;
+		return drawLine(image, x, y, x, y);
 	}
 
 	@Override
-	public void onMouseRelease(BufferedImage image, int x, int y) {
+	public Rectangle onMouseRelease(BufferedImage image, int x, int y) {
 		lastMouseDownX = -1;
 		lastMouseDownY = -1;
+		return null;
 	}
 
 	@Override
-	public void onMouseMoveWhileDown(BufferedImage image, int x, int y) {
-		if (lastMouseDownX < 0 || lastMouseDownY < 0) return;
-		Graphics2D g = (Graphics2D)image.getGraphics();
-		g.setColor(colorSelector.getColor());
-		if (brushSelector.getBrushIsSmooth()) {
-			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-		} else {
-			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-		}
-		g.setStroke(new BasicStroke(brushSelector.getBrushWidth()));
-		g.drawLine(lastMouseDownX, lastMouseDownY, x, y);
+	public Rectangle onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+		if (lastMouseDownX < 0 || lastMouseDownY < 0) return null;
+		Rectangle changedArea = drawLine(image, lastMouseDownX, lastMouseDownY, x, y);
 		lastMouseDownX = x;
 		lastMouseDownY = y;
+		return changedArea;
 	}
 	
 	@Override
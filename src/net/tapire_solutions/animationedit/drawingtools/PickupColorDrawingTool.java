@@ -2,6 +2,7 @@ package net.tapire_solutions.animationedit.drawingtools;
 
 
 import java.awt.Color;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -16,17 +17,20 @@ public class PickupColorDrawingTool implements DrawingTool {
 	}
 	
 	@Override
-	public void onMouseDown(BufferedImage image, int x, int y) {
+	public Rectangle onMouseDown(BufferedImage image, int x, int y) {
 		colorSelector.setColor(new Color(image.getRGB(x, y)));
+		return null;
 	}
 
 	@Override
-	public void onMouseRelease(BufferedImage image, int x, int y) {
+	public Rectangle onMouseRelease(BufferedImage image, int x, int y) {
+		return null;
 	}
 
 	@Override
-	public void onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+	public Rectangle onMouseMoveWhileDown(BufferedImage image, int x, int y) {
 		colorSelector.setColor(new Color(image.getRGB(x, y)));
+		return null;
 	}
 
 	@Override
@@ -1,5 +1,6 @@
 package net.tapire_solutions.animationedit.drawingtools;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 
 /**
@@ -38,21 +39,24 @@ public class SelectRectDrawingTool implements DrawingTool {
 	}
 	
 	@Override
-	public void onMouseDown(BufferedImage image, int x, int y) {
+	public Rectangle onMouseDown(BufferedImage image, int x, int y) {
 		lastMouseDownX = x;
 		lastMouseDownY = y;
+		return null;
 	}
 
 	@Override
-	public void onMouseRelease(BufferedImage image, int x, int y) {
+	public Rectangle onMouseRelease(BufferedImage image, int x, int y) {
 		lastMouseDownX = -1;
 		lastMouseDownY = -1;
+		return null;
 	}
 
 	@Override
-	public void onMouseMoveWhileDown(BufferedImage image, int x, int y) {
-		if (lastMouseDownX < 0) return;
+	public Rectangle onMouseMoveWhileDown(BufferedImage image, int x, int y) {
+		if (lastMouseDownX < 0) return null;
 		notifyListener(x, y);
+		return null;
 	}
 	
 	@Override
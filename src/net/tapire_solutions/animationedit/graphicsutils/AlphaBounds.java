@@ -0,0 +1,92 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+
+/**
+ * Finds the area of an image that isn't fully transparent.
+ *
+ * Scans one row of pixels at a time: rows from the top and bottom until a
+ * visible pixel, then each remaining row only from the edges to the left and
+ * right bounds found so far. Int images are read as stored, other images are
+ * converted with getRGB.
+ */
+public class AlphaBounds {
+
+	/**
+	 * @return Bounds of the pixels with alpha above 0, or null if there are none.
+	 */
+	public static Rectangle getVisibleBounds(BufferedImage image) {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		ColorModel colorModel = image.getColorModel();
+		if (!colorModel.hasAlpha()) {
+			return width > 0 && height > 0 ? new Rectangle(0, 0, width, height) : null;
+		}
+		Raster raster = image.getRaster();
+		boolean hasIntPixels = raster.getTransferType() == DataBuffer.TYPE_INT
+				&& raster.getNumDataElements() == 1
+				&& colorModel instanceof DirectColorModel;
+		int alphaMask = hasIntPixels ? ((DirectColorModel)colorModel).getAlphaMask() : 0xFF000000;
+		int[] row = new int[width];
+
+		int top = 0;
+		while (top < height && !isRowVisible(image, hasIntPixels, top, row, alphaMask)) {
+			top++;
+		}
+		if (top == height) {
+			return null;
+		}
+		int bottom = height - 1;
+		while (!isRowVisible(image, hasIntPixels, bottom, row, alphaMask)) {
+			bottom--;
+		}
+
+		// only the pixels outside the bounds found so far need to be checked
+		int left = width;
+		int right = -1;
+		for (int y = top; y <= bottom; y++) {
+			readRow(image, hasIntPixels, y, row);
+			left = firstVisible(row, 0, left, alphaMask);
+			right = lastVisible(row, right + 1, width, alphaMask);
+		}
+		return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+	}
+
+	private static void readRow(BufferedImage image, boolean hasIntPixels, int y, int[] row) {
+		if (hasIntPixels) {
+			image.getRaster().getDataElements(0, y, row.length, 1, row);
+		} else {
+			image.getRGB(0, y, row.length, 1, row, 0, row.length);
+		}
+	}
+
+	private static boolean isRowVisible(BufferedImage image, boolean hasIntPixels, int y, int[] row, int alphaMask) {
+		readRow(image, hasIntPixels, y, row);
+		return firstVisible(row, 0, row.length, alphaMask) < row.length;
+	}
+
+	/**
+	 * @return Index of the first visible pixel in [from, to), or to if none.
+	 */
+	private static int firstVisible(int[] row, int from, int to, int alphaMask) {
+		for (int x = from; x < to; x++) {
+			if ((row[x] & alphaMask) != 0) return x;
+		}
+		return to;
+	}
+
+	/**
+	 * @return Index of the last visible pixel in [from, to), or from - 1 if none.
+	 */
+	private static int lastVisible(int[] row, int from, int to, int alphaMask) {
+		for (int x = to - 1; x >= from; x--) {
+			if ((row[x] & alphaMask) != 0) return x;
+		}
+		return from - 1;
+	}
+}
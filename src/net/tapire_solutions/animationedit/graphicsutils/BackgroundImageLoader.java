@@ -0,0 +1,279 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Reads images from disk on a pool of worker threads.
+ *
+ * Requests are made and results collected from the owner's thread, so the owner
+ * doesn't need to synchronize its own data. Listeners are called on the worker
+ * threads.
+ *
+ * Each load belongs to the generation it was requested in, of all images and
+ * of its image. cancelAll() and cancel() start new generations, and images of
+ * older generations that are still being read when they are called are
+ * dropped instead of collected.
+ */
+public class BackgroundImageLoader {
+
+	public interface ImageLoadListener {
+		/**
+		 * Called on a worker thread each time a requested image has been read.
+		 */
+		public void onImageLoaded(String imageName, int numLoaded, int numRequested);
+
+		/**
+		 * Called on a worker thread when all requested images have been read.
+		 */
+		public void onAllImagesLoaded(int numLoaded, long millis);
+	}
+
+	public static class LoadedImage {
+		public final String imageName;
+		public final BufferedImage image;
+		public final boolean wasSkipped;
+		public LoadedImage(String imageName, BufferedImage image, boolean wasSkipped) {
+			this.imageName = imageName;
+			this.image = image;
+			this.wasSkipped = wasSkipped;
+		}
+	}
+
+	private final String imageDirectory;
+	private ExecutorService executor = null;
+	private Set<String> pendingImages = new HashSet<String>();
+	private ConcurrentLinkedQueue<LoadedImage> loadedImages = new ConcurrentLinkedQueue<LoadedImage>();
+	private ArrayList<ImageLoadListener> listeners = new ArrayList<ImageLoadListener>();
+	private final AtomicInteger numLoaded = new AtomicInteger(0);
+	private volatile int numRequested = 0;
+	private volatile long startTime = 0;
+	private final AtomicLong unclaimedBytes = new AtomicLong(0);
+	private volatile long availableBytes = Long.MAX_VALUE;
+	// guards the generations and the results of the current ones
+	private final Object resultLock = new Object();
+	private long generation = 0;
+	// generation of each image that has been cancelled, 0 if never
+	private final Map<String, Long> imageGenerations = new HashMap<String, Long>();
+
+	/**
+	 * @param imageDirectory Directory that image names are relative to, ending with "/".
+	 */
+	public BackgroundImageLoader(String imageDirectory) {
+		this.imageDirectory = imageDirectory;
+	}
+
+	/**
+	 * Read image and convert it to a compatible image.
+	 * @param imagePath Path to image file.
+	 * @return Image or null if it couldn't be read.
+	 */
+	public static BufferedImage readImage(String imagePath) {
+		BufferedImage loadedImage;
+		try {
+		    loadedImage = ImageIO.read(new File(imagePath));
+		} catch (IOException e) {
+			return null;
+		}
+		if (loadedImage == null) {
+			return null;
+		}
+		return CompatibleImageCreator.createCompatibleImage(loadedImage);
+	}
+
+	public static long estimateBytes(BufferedImage image) {
+		return 4L * image.getWidth() * image.getHeight();
+	}
+
+	public void addListener(ImageLoadListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Set how many bytes of loaded images the owner has room for. Preloads
+	 * are skipped when loaded images not yet collected would exceed it.
+	 */
+	public void setAvailableBytes(long bytes) {
+		availableBytes = bytes;
+	}
+
+	/**
+	 * Start loading an image.
+	 * @param imageName Image file name in the image directory.
+	 * @param isPreload If true the load is skipped when there is no room for it.
+	 */
+	public void load(final String imageName, final boolean isPreload) {
+		if (pendingImages.contains(imageName)) return;
+		if (executor == null) {
+			executor = createExecutor();
+		}
+		pendingImages.add(imageName);
+		final long loadGeneration;
+		final long imageGeneration;
+		synchronized (resultLock) {
+			if (numLoaded.get() >= numRequested) {
+				numLoaded.set(0);
+				numRequested = 0;
+				startTime = System.nanoTime();
+			}
+			numRequested++;
+			loadGeneration = generation;
+			imageGeneration = getImageGeneration(imageName);
+		}
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				loadInBackground(imageName, isPreload, loadGeneration, imageGeneration);
+			}
+		});
+	}
+
+	private long getImageGeneration(String imageName) {
+		Long imageGeneration = imageGenerations.get(imageName);
+		return imageGeneration == null ? 0 : imageGeneration;
+	}
+
+	private void loadInBackground(String imageName, boolean isPreload, long loadGeneration, long imageGeneration) {
+		BufferedImage image = null;
+		boolean wasSkipped = isPreload && unclaimedBytes.get() >= availableBytes;
+		if (!wasSkipped) {
+			try {
+				image = readImage(imageDirectory + imageName);
+			} catch (RuntimeException e) {
+				// still report the image as done so it isn't pending forever
+				System.out.println("Error loading image " + imageName + ": " + e);
+			}
+		}
+		int loaded;
+		int requested;
+		synchronized (resultLock) {
+			if (loadGeneration != generation || imageGeneration != getImageGeneration(imageName)) {
+				// cancelled while reading, the image may be older than the file now
+				return;
+			}
+			if (image != null) {
+				unclaimedBytes.addAndGet(estimateBytes(image));
+			}
+			loadedImages.add(new LoadedImage(imageName, image, wasSkipped));
+			loaded = numLoaded.incrementAndGet();
+			requested = numRequested;
+		}
+		for (ImageLoadListener listener : listeners) {
+			listener.onImageLoaded(imageName, loaded, requested);
+		}
+		if (loaded == requested) {
+			allImagesLoaded(loaded);
+		}
+	}
+
+	private void allImagesLoaded(int loaded) {
+		long millis = (System.nanoTime() - startTime) / 1000000;
+		System.out.println("Loaded " + loaded + " images in background in " + millis + " ms.");
+		for (ImageLoadListener listener : listeners) {
+			listener.onAllImagesLoaded(loaded, millis);
+		}
+	}
+
+	/**
+	 * @return True if the image has been requested but not yet collected.
+	 */
+	public boolean isPending(String imageName) {
+		return pendingImages.contains(imageName);
+	}
+
+	/**
+	 * Collect the next finished image.
+	 * @return Loaded image, or null if no more images have finished loading.
+	 */
+	public LoadedImage takeLoadedImage() {
+		LoadedImage loadedImage = loadedImages.poll();
+		if (loadedImage != null) {
+			pendingImages.remove(loadedImage.imageName);
+			if (loadedImage.image != null) {
+				unclaimedBytes.addAndGet(-estimateBytes(loadedImage.image));
+			}
+		}
+		return loadedImage;
+	}
+
+	/**
+	 * Forget a pending image, eg. because its file changed. If it is being
+	 * read it is dropped when done.
+	 */
+	public void cancel(String imageName) {
+		if (!pendingImages.remove(imageName)) return;
+		int loaded = 0;
+		synchronized (resultLock) {
+			boolean wasRead = false;
+			Iterator<LoadedImage> it = loadedImages.iterator();
+			while (it.hasNext()) {
+				LoadedImage loadedImage = it.next();
+				if (loadedImage.imageName.equals(imageName)) {
+					it.remove();
+					if (loadedImage.image != null) {
+						unclaimedBytes.addAndGet(-estimateBytes(loadedImage.image));
+					}
+					wasRead = true;
+				}
+			}
+			if (!wasRead) {
+				imageGenerations.put(imageName, getImageGeneration(imageName) + 1);
+				numRequested--;
+				if (numRequested > 0 && numLoaded.get() == numRequested) {
+					// the others are done, nothing else will report it
+					loaded = numRequested;
+				}
+			}
+		}
+		if (loaded > 0) {
+			allImagesLoaded(loaded);
+		}
+	}
+
+	/**
+	 * Stop all loading and forget pending images. Images being read are
+	 * dropped when done.
+	 */
+	public void cancelAll() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+		synchronized (resultLock) {
+			generation++;
+			imageGenerations.clear();
+			pendingImages.clear();
+			loadedImages.clear();
+			unclaimedBytes.set(0);
+			numLoaded.set(0);
+			numRequested = 0;
+		}
+	}
+
+	private static ExecutorService createExecutor() {
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ImageLoader");
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+	}
+}
@@ -3,38 +3,84 @@ package net.tapire_solutions.animationedit.graphicsutils;
 import java.awt.Graphics;
 import java.awt.GraphicsConfiguration;
 import java.awt.GraphicsEnvironment;
+import java.awt.HeadlessException;
 import java.awt.Image;
 import java.awt.Transparency;
 import java.awt.image.BufferedImage;
 
+/**
+ * Creates images in the format that is fastest to draw on the screen. Without a
+ * screen, eg. in batch jobs and tests, plain TYPE_INT_ARGB_PRE images are created.
+ */
 public class CompatibleImageCreator {
-	
+
+	public enum Mode {
+		/** Use the screen format when there is a screen. */
+		AUTO,
+		/** Always create TYPE_INT_ARGB_PRE images. */
+		HEADLESS
+	}
+
+	private static Mode mode = Mode.AUTO;
+	private static GraphicsConfiguration graphicsConfiguration = null;
+	private static boolean hasLookedUpGraphicsConfiguration = false;
+
+	public static synchronized void setMode(Mode newMode) {
+		mode = newMode;
+		graphicsConfiguration = null;
+		hasLookedUpGraphicsConfiguration = false;
+	}
+
+	/**
+	 * @param name Mode name as in the config file, eg. "auto" or "headless".
+	 */
+	public static void setMode(String name) {
+		try {
+			setMode(Mode.valueOf(name.trim().toUpperCase()));
+		} catch (IllegalArgumentException e) {
+			System.out.println("Unknown image creation mode " + name + ", using auto.");
+			setMode(Mode.AUTO);
+		}
+	}
+
+	/**
+	 * @return Configuration of the default screen, or null if images should be created without one.
+	 */
+	private static synchronized GraphicsConfiguration getGraphicsConfiguration() {
+		if (!hasLookedUpGraphicsConfiguration) {
+			hasLookedUpGraphicsConfiguration = true;
+			if (mode == Mode.AUTO && !GraphicsEnvironment.isHeadless()) {
+				try {
+					graphicsConfiguration = GraphicsEnvironment
+			                .getLocalGraphicsEnvironment()
+			                .getDefaultScreenDevice()
+			                .getDefaultConfiguration();
+				} catch (HeadlessException e) {
+					graphicsConfiguration = null;
+				}
+			}
+			if (graphicsConfiguration == null) {
+				System.out.println("No screen, creating TYPE_INT_ARGB_PRE images.");
+			}
+		}
+		return graphicsConfiguration;
+	}
+
 	/**
 	 * Create image optimized for drawing on current system.
 	 * @param oldImage Image to be optimized.
 	 * @return Optimized image.
 	 */
 	public static BufferedImage createCompatibleImage(Image oldImage) {
-
-        GraphicsConfiguration graphicsConfiguration
-                = GraphicsEnvironment
-                .getLocalGraphicsEnvironment()
-                .getDefaultScreenDevice()
-                .getDefaultConfiguration();
-         
-        BufferedImage compatibleImage
-                = graphicsConfiguration.createCompatibleImage(
-                oldImage.getWidth(null),
-                oldImage.getHeight(null), 
-                Transparency.TRANSLUCENT);
+        BufferedImage compatibleImage = createCompatibleImage(oldImage.getWidth(null), oldImage.getHeight(null));
 
         Graphics g = compatibleImage.getGraphics();
         g.drawImage(oldImage, 0, 0, null);
         g.dispose();
-        
+
         return compatibleImage;
 	}
-	
+
 	/**
 	 * Create image optimized for drawing on current system.
 	 * @param w Width.
@@ -42,19 +88,10 @@ public class CompatibleImageCreator {
 	 * @return Optimized image.
 	 */
 	public static BufferedImage createCompatibleImage(int w, int h) {
-
-        GraphicsConfiguration graphicsConfiguration
-                = GraphicsEnvironment
-                .getLocalGraphicsEnvironment()
-                .getDefaultScreenDevice()
-                .getDefaultConfiguration();
-         
-        BufferedImage compatibleImage
-                = graphicsConfiguration.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
-
-        Graphics g = compatibleImage.getGraphics();
-        g.dispose();
-        
-        return compatibleImage;
+		GraphicsConfiguration graphicsConfiguration = getGraphicsConfiguration();
+		if (graphicsConfiguration == null) {
+			return new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+        return graphicsConfiguration.createCompatibleImage(w, h, Transparency.TRANSLUCENT);
 	}
 }
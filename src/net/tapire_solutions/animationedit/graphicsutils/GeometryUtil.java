@@ -1,5 +1,7 @@
 package net.tapire_solutions.animationedit.graphicsutils;
 
+import java.awt.Rectangle;
+
 public class GeometryUtil {
 	public static boolean areRectsColliding(
 			float r1x, float r1y, float r1w, float r1h,
@@ -22,4 +24,13 @@ public class GeometryUtil {
 			return false;
 		return true;
 	}
+	
+	/**
+	 * @return Union of two rectangles, where null is an empty area.
+	 */
+	public static Rectangle union(Rectangle r1, Rectangle r2) {
+		if (r1 == null) return r2;
+		if (r2 == null) return r1;
+		return r1.union(r2);
+	}
 }
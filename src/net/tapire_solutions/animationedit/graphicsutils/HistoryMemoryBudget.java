@@ -0,0 +1,91 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Memory budget shared by the undo histories of several images.
+ * When the undo states of all images together use more bytes than the budget,
+ * the oldest states are evicted first, whichever image they belong to.
+ * Evicted states are dropped, or moved to disk if the image has an UndoJournal.
+ */
+public class HistoryMemoryBudget {
+	private final long maxBytes;
+	private long usedBytes = 0;
+	private int numStatesInMemory = 0;
+	// all states in memory, oldest first, plus dropped ones not yet cleaned out
+	private ArrayDeque<ImageWithHistory.TileDelta> statesOldestFirst = new ArrayDeque<ImageWithHistory.TileDelta>();
+
+	/**
+	 * @param maxBytes Max number of bytes for all undo states using this budget.
+	 */
+	public HistoryMemoryBudget(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Account for a state put in memory, then evict old states until within
+	 * budget. The new state itself is always kept.
+	 */
+	void add(ImageWithHistory.TileDelta state) {
+		if (statesOldestFirst.size() > 2 * numStatesInMemory + 16) {
+			removeDroppedFromQueue();
+		}
+		statesOldestFirst.addLast(state);
+		usedBytes += state.bytes;
+		numStatesInMemory++;
+		while (usedBytes > maxBytes && statesOldestFirst.peekFirst() != state) {
+			ImageWithHistory.TileDelta oldest = statesOldestFirst.pollFirst();
+			if (!oldest.isDropped()) {
+				oldest.owner.evictState(oldest);
+			}
+		}
+	}
+
+	/**
+	 * Called by the owning history when the size of a state in memory changes.
+	 */
+	void resize(ImageWithHistory.TileDelta state, long bytes) {
+		usedBytes += bytes - state.bytes;
+		state.bytes = bytes;
+	}
+
+	/**
+	 * Called by the owning history when a state in memory has been moved to
+	 * the journal. It is already out of the queue since only the oldest state
+	 * is evicted.
+	 */
+	void movedToJournal(ImageWithHistory.TileDelta state) {
+		usedBytes -= state.bytes;
+		numStatesInMemory--;
+	}
+
+	/**
+	 * Called by the owning history when a state is thrown away.
+	 */
+	void release(ImageWithHistory.TileDelta state) {
+		if (state.isDropped()) return;
+		if (!state.isInJournal()) {
+			usedBytes -= state.bytes;
+			numStatesInMemory--;
+		}
+		state.drop();
+	}
+
+	private void removeDroppedFromQueue() {
+		Iterator<ImageWithHistory.TileDelta> it = statesOldestFirst.iterator();
+		while (it.hasNext()) {
+			if (it.next().isDropped()) {
+				it.remove();
+			}
+		}
+	}
+}
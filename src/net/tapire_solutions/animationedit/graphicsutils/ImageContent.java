@@ -0,0 +1,85 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+
+/**
+ * Hashing and comparing the pixels of an area of an image, to find images
+ * with the same content.
+ *
+ * Int images are read as stored, so images of different types may hash
+ * differently even if they look the same. Equal hashes don't prove equal
+ * content, check with isSameContent().
+ */
+public class ImageContent {
+
+	/**
+	 * @param area Area of the image to hash, or null for none.
+	 * @return 64-bit hash of the size and pixels of the area.
+	 */
+	public static long hash(BufferedImage image, Rectangle area) {
+		if (area == null) {
+			return 0;
+		}
+		long hash = mix(((long)area.width << 32) | area.height);
+		boolean hasIntPixels = hasIntPixels(image);
+		int[] row = new int[area.width];
+		for (int y = area.y; y < area.y + area.height; y++) {
+			readRow(image, hasIntPixels, area.x, y, row);
+			for (int x = 0; x < row.length; x++) {
+				hash = (hash ^ row[x]) * 0x100000001B3L;
+			}
+			hash = mix(hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * @return True if two areas have the same size and pixels.
+	 */
+	public static boolean isSameContent(BufferedImage a, Rectangle areaA, BufferedImage b, Rectangle areaB) {
+		if (areaA == null || areaB == null) {
+			return areaA == areaB;
+		}
+		if (areaA.width != areaB.width || areaA.height != areaB.height) {
+			return false;
+		}
+		// compare as stored only if both are stored the same way
+		boolean hasIntPixels = hasIntPixels(a) && hasIntPixels(b) && a.getColorModel().equals(b.getColorModel());
+		int[] rowA = new int[areaA.width];
+		int[] rowB = new int[areaB.width];
+		for (int y = 0; y < areaA.height; y++) {
+			readRow(a, hasIntPixels, areaA.x, areaA.y + y, rowA);
+			readRow(b, hasIntPixels, areaB.x, areaB.y + y, rowB);
+			for (int x = 0; x < rowA.length; x++) {
+				if (rowA[x] != rowB[x]) return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean hasIntPixels(BufferedImage image) {
+		Raster raster = image.getRaster();
+		return raster.getTransferType() == DataBuffer.TYPE_INT
+				&& raster.getNumDataElements() == 1
+				&& image.getColorModel() instanceof DirectColorModel;
+	}
+
+	private static void readRow(BufferedImage image, boolean hasIntPixels, int x, int y, int[] row) {
+		if (hasIntPixels) {
+			image.getRaster().getDataElements(x, y, row.length, 1, row);
+		} else {
+			image.getRGB(x, y, row.length, 1, row, 0, row.length);
+		}
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,185 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes images to disk on a pool of worker threads.
+ *
+ * Each image is encoded to a temporary file next to the target and then renamed
+ * over it, so a crash during a save never leaves a half written image. Images
+ * are tagged with a generation number; if two saves of the same file overlap,
+ * an older generation never replaces a newer one. Images are encoded with
+ * PngEncoder.
+ */
+public class ImageSaver {
+
+	public interface ImageSaveListener {
+		/**
+		 * Called when all images of one save have been written. May be called
+		 * on a worker thread.
+		 */
+		public void onImagesSaved(int numSaved, int numFailed, long millis);
+	}
+
+	/**
+	 * An image to save. The image must not be modified after it is handed over.
+	 */
+	public static class SaveRequest {
+		public final String imageName;
+		public final String imagePath;
+		public final BufferedImage image;
+		public final long generation;
+		public SaveRequest(String imageName, String imagePath, BufferedImage image, long generation) {
+			this.imageName = imageName;
+			this.imagePath = imagePath;
+			this.image = image;
+			this.generation = generation;
+		}
+	}
+
+	public static class SaveResult {
+		public final String imageName;
+		public final long generation;
+		public final boolean wasWritten;
+		public SaveResult(String imageName, long generation, boolean wasWritten) {
+			this.imageName = imageName;
+			this.generation = generation;
+			this.wasWritten = wasWritten;
+		}
+	}
+
+	private volatile PngEncoder pngEncoder = new PngEncoder();
+	private ExecutorService executor = null;
+	private ConcurrentLinkedQueue<SaveResult> savedImages = new ConcurrentLinkedQueue<SaveResult>();
+	// newest generation written to each path
+	private ConcurrentHashMap<String, Long> writtenGenerations = new ConcurrentHashMap<String, Long>();
+
+	/**
+	 * @param compressionLevel Deflate level for saved images, 1 is fastest and 9 gives the smallest files.
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		pngEncoder = new PngEncoder(compressionLevel);
+	}
+
+	/**
+	 * Start saving images.
+	 * @param requests Images to save.
+	 * @param listener Notified when all images are written, or null.
+	 */
+	public void save(List<SaveRequest> requests, final ImageSaveListener listener) {
+		final long startTime = System.nanoTime();
+		final int numRequests = requests.size();
+		final AtomicInteger numRemaining = new AtomicInteger(numRequests);
+		final AtomicInteger numFailed = new AtomicInteger(0);
+		if (requests.isEmpty()) {
+			if (listener != null) {
+				listener.onImagesSaved(0, 0, 0);
+			}
+			return;
+		}
+		if (executor == null) {
+			executor = createExecutor();
+		}
+		for (final SaveRequest request : requests) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					boolean wasWritten = writeImage(request);
+					if (!wasWritten) {
+						numFailed.incrementAndGet();
+					}
+					savedImages.add(new SaveResult(request.imageName, request.generation, wasWritten));
+					if (numRemaining.decrementAndGet() == 0) {
+						long millis = (System.nanoTime() - startTime) / 1000000;
+						int failed = numFailed.get();
+						System.out.println("Saved " + (numRequests - failed) + " images in " + millis + " ms.");
+						if (listener != null) {
+							listener.onImagesSaved(numRequests - failed, failed, millis);
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private boolean writeImage(SaveRequest request) {
+		File target = new File(request.imagePath);
+		File temp = null;
+		try {
+			temp = File.createTempFile(target.getName(), ".tmp", target.getAbsoluteFile().getParentFile());
+			pngEncoder.write(request.image, temp);
+			synchronized (this) {
+				Long written = writtenGenerations.get(request.imagePath);
+				if (written != null && written > request.generation) {
+					// a newer version was written while this one was encoded, which counts as saved
+					temp.delete();
+					return true;
+				}
+				moveOver(temp, target);
+				writtenGenerations.put(request.imagePath, request.generation);
+			}
+			System.out.println("Wrote image to disk " + request.imagePath);
+			return true;
+		} catch (IOException e) {
+			System.out.println("Error writing to disk: " + request.imagePath + " " + e.getMessage());
+			if (temp != null) {
+				temp.delete();
+			}
+			return false;
+		}
+	}
+
+	private static void moveOver(File source, File target) throws IOException {
+		try {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Collect the result of the next finished image.
+	 * @return Result, or null if no more images have finished.
+	 */
+	public SaveResult takeSaveResult() {
+		return savedImages.poll();
+	}
+
+	/**
+	 * Finish all started saves.
+	 */
+	public void waitUntilDone() {
+		if (executor == null) return;
+		executor.shutdown();
+		try {
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		executor = null;
+	}
+
+	private static ExecutorService createExecutor() {
+		return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ImageSaver");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+}
@@ -1,25 +1,71 @@
 package net.tapire_solutions.animationedit.graphicsutils;
 
+import java.awt.Dimension;
 import java.awt.Image;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
-import javax.imageio.ImageIO;
+import net.tapire_solutions.animationedit.graphicsutils.BackgroundImageLoader.ImageLoadListener;
+import net.tapire_solutions.animationedit.graphicsutils.BackgroundImageLoader.LoadedImage;
+import net.tapire_solutions.animationedit.graphicsutils.ImageSaver.ImageSaveListener;
+import net.tapire_solutions.animationedit.graphicsutils.ImageSaver.SaveRequest;
+import net.tapire_solutions.animationedit.graphicsutils.ImageSaver.SaveResult;
 
+/**
+ * Loads and caches the images of a working directory.
+ * 
+ * Images are kept in least-recently-used order. When the estimated memory of the
+ * cached images exceeds the cache budget, the least recently used images are
+ * dropped and loaded again when next requested. Modified images are pinned until
+ * they have been written to disk.
+ * 
+ * Images can be preloaded on background threads. Loaded images are collected
+ * on the next access, so the store itself is only used from one thread.
+ * Saving works the same way: modified images are copied and written on
+ * background threads, and stay pinned until the write has been collected.
+ */
 public class ImageStore {
 	
 	private class ImageRecord {
 		public ImageWithHistory image;
 		public String imagePath;
 		public boolean wasModified;
-		public ImageRecord(ImageWithHistory image, String imagePath) {
+		// increased on each modification, to tell if a finished save is still current
+		public long generation = 0;
+		// generation being saved, or 0
+		public long savingGeneration = 0;
+		public final long estimatedBytes;
+		public ImageRecord(ImageWithHistory image, String imagePath, boolean wasModified) {
 			this.image = image;
 			this.imagePath = imagePath;
-			wasModified = true;
+			this.wasModified = wasModified;
+			BufferedImage bufferedImage = image.getAsBufferedImage();
+			// the image plus the saved state kept by its history
+			estimatedBytes = 2L * 4 * bufferedImage.getWidth() * bufferedImage.getHeight();
+		}
+	}
+	
+	// visible bounds and hash of an image at a version
+	private static class ContentKey {
+		public final long version;
+		public final Rectangle visibleBounds;
+		public final long hash;
+		public ContentKey(long version, Rectangle visibleBounds, long hash) {
+			this.version = version;
+			this.visibleBounds = visibleBounds;
+			this.hash = hash;
 		}
 	}
 	
@@ -28,11 +74,28 @@ public class ImageStore {
 	}
 	
 	private Map<String, ImageRecord> images;
+	// sizes of all images seen, also the ones dropped from the cache
+	private Map<String, Dimension> imageSizes = new HashMap<String, Dimension>();
+	// number of images with each width and height, to find the max sizes without a full scan
+	private TreeMap<Integer, Integer> imageWidthCounts = new TreeMap<Integer, Integer>();
+	private TreeMap<Integer, Integer> imageHeightCounts = new TreeMap<Integer, Integer>();
+	private long cachedImageBytes = 0;
+	private long maxCachedImageBytes = defaultMaxCachedImageBytes;
 	private final String imageDirectory;
 	private int maxImageWidth = 1;
 	private int maxImageHeight = 1;
 	private ArrayList<ImageStoreMaxSizeChangedListener> listeners = new ArrayList<ImageStoreMaxSizeChangedListener>();
-	private static final int maxUndoSteps = 10;
+	private final HistoryMemoryBudget historyMemoryBudget;
+	private final BackgroundImageLoader backgroundLoader;
+	private final ImageSaver imageSaver = new ImageSaver();
+	private long lastGeneration = 0;
+	// version of each image name, changed whenever what getImage returns may have changed
+	private Map<String, Long> imageVersions = new HashMap<String, Long>();
+	private long lastImageVersion = 0;
+	private Map<String, ContentKey> contentKeys = new HashMap<String, ContentKey>();
+	private UndoJournal undoJournal = null;
+	private static final long defaultHistoryMemoryBudget = 64L * 1024 * 1024;
+	private static final long defaultMaxCachedImageBytes = 512L * 1024 * 1024;
 	private static final String imageSuffix = ".png";
 	
 	private static String makeSurePathHasSuffix(String path, String suffix) {
@@ -46,11 +109,59 @@ public class ImageStore {
 	}
 	
 	public ImageStore(String imageDirectory) {
+		this(imageDirectory, new HistoryMemoryBudget(defaultHistoryMemoryBudget));
+	}
+	
+	/**
+	 * @param imageDirectory Directory to load and save images in.
+	 * @param historyMemoryBudget Budget for undo states of all images, may be shared with other stores.
+	 */
+	public ImageStore(String imageDirectory, HistoryMemoryBudget historyMemoryBudget) {
 		if (!imageDirectory.endsWith("/")) {
 			imageDirectory = imageDirectory + "/";
 		}
 		this.imageDirectory = imageDirectory;
-		images = new HashMap<String, ImageRecord>();
+		this.historyMemoryBudget = historyMemoryBudget;
+		backgroundLoader = new BackgroundImageLoader(imageDirectory);
+		images = createImageCache();
+	}
+	
+	private static Map<String, ImageRecord> createImageCache() {
+		return new LinkedHashMap<String, ImageRecord>(16, 0.75f, true);
+	}
+	
+	/**
+	 * Set the memory budget for cached images. Modified images are kept
+	 * even if over budget.
+	 * @param maxBytes Estimated number of bytes.
+	 */
+	public void setMaxCachedImageBytes(long maxBytes) {
+		maxCachedImageBytes = maxBytes;
+		dropImagesOverBudget(null);
+		updateBackgroundLoadBudget();
+	}
+	
+	public long getCachedImageBytes() {
+		return cachedImageBytes;
+	}
+	
+	/**
+	 * Drop least recently used unmodified images until within budget.
+	 * @param keepImageName Image to keep even if over budget, or null.
+	 */
+	private void dropImagesOverBudget(String keepImageName) {
+		Iterator<Map.Entry<String, ImageRecord>> it = images.entrySet().iterator();
+		while (cachedImageBytes > maxCachedImageBytes && it.hasNext()) {
+			Map.Entry<String, ImageRecord> entry = it.next();
+			ImageRecord record = entry.getValue();
+			if (record == null || record.wasModified || entry.getKey().equals(keepImageName)) {
+				continue;
+			}
+			it.remove();
+			record.image.clearHistory();
+			cachedImageBytes -= record.estimatedBytes;
+			System.out.println("Dropped image from cache " + entry.getKey());
+		}
 	}
 	
 	public void addMaxSizeChangedListener(ImageStoreMaxSizeChangedListener listener) {
@@ -61,46 +172,205 @@ public class ImageStore {
 		listeners.remove(listener);
 	}
 	
+	/**
+	 * Listen to background loading. Called on the loader threads.
+	 */
+	public void addImageLoadListener(ImageLoadListener listener) {
+		backgroundLoader.addListener(listener);
+	}
+	
+	/**
+	 * Start loading images on background threads. Images that are already
+	 * loaded, or that don't fit in the cache budget, are skipped.
+	 * @param imageNames File names of images, eg. "myimage.png".
+	 */
+	public void preloadImages(Collection<String> imageNames) {
+		collectBackgroundWork();
+		updateBackgroundLoadBudget();
+		for (String imageName : imageNames) {
+			if (imageName == null || imageName.isEmpty()) continue;
+			imageName = makeSurePathHasSuffix(imageName, imageSuffix);
+			if (!images.containsKey(imageName)) {
+				backgroundLoader.load(imageName, true);
+			}
+		}
+	}
+	
+	/**
+	 * @return True if the image is being loaded in the background.
+	 */
+	public boolean isImageLoading(String imageName) {
+		if (imageName == null) return false;
+		collectBackgroundWork();
+		return backgroundLoader.isPending(makeSurePathHasSuffix(imageName, imageSuffix));
+	}
+	
+	private void collectBackgroundWork() {
+		collectSaveResults();
+		collectLoadedImages();
+	}
+	
+	/**
+	 * Get a number that changes whenever the content of an image may have
+	 * changed, eg. when it is modified, undone, loaded or reloaded. Use it to
+	 * know when something drawn from the image needs to be redrawn.
+	 * @param imageName File name of image, eg. "myimage.png".
+	 * @return Version of the image, 0 if it was never loaded.
+	 */
+	public long getImageVersion(String imageName) {
+		if (imageName == null) return 0;
+		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
+		collectBackgroundWork();
+		Long version = imageVersions.get(imageName);
+		return version == null ? 0 : version;
+	}
+	
+	private void imageChanged(String imageName) {
+		imageVersions.put(imageName, ++lastImageVersion);
+	}
+	
+	private void collectLoadedImages() {
+		LoadedImage loadedImage;
+		boolean collectedAny = false;
+		while ((loadedImage = backgroundLoader.takeLoadedImage()) != null) {
+			if (loadedImage.wasSkipped || images.containsKey(loadedImage.imageName)) {
+				continue;
+			}
+			collectedAny = true;
+			if (loadedImage.image == null) {
+				images.put(loadedImage.imageName, null);
+				imageChanged(loadedImage.imageName);
+				System.out.println("Load image " + imageDirectory + loadedImage.imageName + " - fail.");
+			} else {
+				putNewImage(loadedImage.imageName, imageDirectory + loadedImage.imageName, loadedImage.image, false);
+			}
+		}
+		if (collectedAny) {
+			updateBackgroundLoadBudget();
+		}
+	}
+	
+	private void updateBackgroundLoadBudget() {
+		backgroundLoader.setAvailableBytes(maxCachedImageBytes - cachedImageBytes);
+	}
+	
 	/**
 	 * Forget about image.
 	 * @param imageToReload File name of image, eg. "myimage.png".
 	 */
 	public void reloadImage(String imageToReload) {
 		imageToReload = makeSurePathHasSuffix(imageToReload, imageSuffix);
+		collectSaveResults();
+		ImageRecord record = images.get(imageToReload);
+		if (record != null && record.wasModified) {
+			System.out.println("Kept unsaved changes of " + imageToReload + ", not reloaded.");
+			return;
+		}
+		// a load still running or not yet collected may have read the old file
+		backgroundLoader.cancel(imageToReload);
 		if (images.containsKey(imageToReload)) {
-			images.remove(imageToReload);
+			ImageRecord removed = images.remove(imageToReload);
+			if (removed != null) {
+				removed.image.clearHistory();
+				cachedImageBytes -= removed.estimatedBytes;
+			}
 		}
+		removeImageSize(imageToReload);
+		imageChanged(imageToReload);
 	}
 	
 	/**
 	 * Force reloading of all resources.
 	 */
 	public void reloadAll() {
-		images = new HashMap<String, ImageRecord>();
+		forgetAllImages();
 	}
 	
-	private void calculateImageSizes() {
-		int oldMaxImageWidth = maxImageWidth;
-		maxImageWidth = 1;
-		for (Map.Entry<String, ImageRecord> entry : images.entrySet()) {
-			if (entry.getValue() != null) {
-				int val = entry.getValue().image.getAsBufferedImage().getWidth(null);
-				if (val > maxImageWidth) {
-					maxImageWidth = val;
-				}
-			}
+	/**
+	 * Forget all images, free their undo states from the memory budget
+	 * and delete the undo journal.
+	 */
+	public void close() {
+		waitForSaves();
+		forgetAllImages();
+		if (undoJournal != null) {
+			undoJournal.close();
+			undoJournal = null;
 		}
-		int oldMaxImageHeight = maxImageHeight;
-		maxImageHeight = 1;
-		for (Map.Entry<String, ImageRecord> entry : images.entrySet()) {
-			if (entry.getValue() != null) {
-				int val = entry.getValue().image.getAsBufferedImage().getHeight(null);
-				if (val > maxImageHeight) {
-					maxImageHeight = val;
-				}
+	}
+	
+	private void forgetAllImages() {
+		backgroundLoader.cancelAll();
+		for (ImageRecord record : images.values()) {
+			if (record != null) {
+				record.image.clearHistory();
 			}
 		}
-		if (oldMaxImageWidth != maxImageWidth || oldMaxImageHeight != maxImageHeight) {
+		images = createImageCache();
+		imageSizes = new HashMap<String, Dimension>();
+		imageWidthCounts.clear();
+		imageHeightCounts.clear();
+		cachedImageBytes = 0;
+		for (String imageName : imageVersions.keySet()) {
+			imageVersions.put(imageName, ++lastImageVersion);
+		}
+		contentKeys.clear();
+		updateBackgroundLoadBudget();
+	}
+	
+	/**
+	 * Move undo states evicted from the memory budget to a journal file in
+	 * the image directory instead of dropping them. Applies to images loaded
+	 * after this call.
+	 */
+	public void useUndoJournal() {
+		if (undoJournal != null) return;
+		try {
+			undoJournal = new UndoJournal(new File(imageDirectory));
+		} catch (IOException e) {
+			System.out.println("Couldn't create undo journal in " + imageDirectory + ": " + e.getMessage());
+		}
+	}
+	
+	private void setImageSize(String imageName, int width, int height) {
+		removeImageSize(imageName);
+		imageSizes.put(imageName, new Dimension(width, height));
+		addCount(imageWidthCounts, width);
+		addCount(imageHeightCounts, height);
+	}
+	
+	private void removeImageSize(String imageName) {
+		Dimension size = imageSizes.remove(imageName);
+		if (size != null) {
+			removeCount(imageWidthCounts, size.width);
+			removeCount(imageHeightCounts, size.height);
+		}
+	}
+	
+	private static void addCount(TreeMap<Integer, Integer> counts, int key) {
+		Integer count = counts.get(key);
+		counts.put(key, count == null ? 1 : count + 1);
+	}
+	
+	private static void removeCount(TreeMap<Integer, Integer> counts, int key) {
+		Integer count = counts.get(key);
+		if (count == null) return;
+		if (count <= 1) {
+			counts.remove(key);
+		} else {
+			counts.put(key, count - 1);
+		}
+	}
+	
+	/**
+	 * Update the max image size and notify listeners if it changed.
+	 */
+	private void updateMaxImageSize() {
+		int newMaxImageWidth = imageWidthCounts.isEmpty() ? 1 : Math.max(1, imageWidthCounts.lastKey());
+		int newMaxImageHeight = imageHeightCounts.isEmpty() ? 1 : Math.max(1, imageHeightCounts.lastKey());
+		if (newMaxImageWidth != maxImageWidth || newMaxImageHeight != maxImageHeight) {
+			maxImageWidth = newMaxImageWidth;
+			maxImageHeight = newMaxImageHeight;
 			for (ImageStoreMaxSizeChangedListener listener : listeners) {
 				listener.maxSizeChanged(maxImageWidth, maxImageHeight);
 			}
@@ -115,35 +385,107 @@ public class ImageStore {
 		return maxImageHeight;
 	}
 	
+	/**
+	 * @param compressionLevel Deflate level for saved images, 1 is fastest and 9 gives the smallest files.
+	 */
+	public void setPngCompressionLevel(int compressionLevel) {
+		imageSaver.setCompressionLevel(compressionLevel);
+	}
+	
 	public void writeModifiedImagesToDisk() {
+		writeModifiedImagesToDisk(null);
+	}
+	
+	/**
+	 * Start writing modified images to disk in the background. The images are
+	 * copied first, so they can be edited again right away; edits made after
+	 * this call keep the image modified.
+	 * @param listener Notified when all images are written, or null.
+	 */
+	public void writeModifiedImagesToDisk(ImageSaveListener listener) {
+		collectSaveResults();
+		ArrayList<SaveRequest> requests = new ArrayList<SaveRequest>();
 		for (Map.Entry<String, ImageRecord> entry : images.entrySet()) {
-			if (entry.getValue() != null) {
-				if (entry.getValue().wasModified) {
-					try {
-					    File outputfile = new File(entry.getValue().imagePath);
-					    ImageIO.write(entry.getValue().image.getAsBufferedImage(), "png", outputfile);
-					    entry.getValue().wasModified = false;
-					    System.out.println("Wrote image to disk " + entry.getValue().imagePath);
-					} catch (IOException e) {
-					    System.out.println("Error writing to disk: " + entry.getValue().imagePath);
-					}
-				}
+			ImageRecord record = entry.getValue();
+			if (record != null && record.wasModified && record.savingGeneration != record.generation) {
+				record.savingGeneration = record.generation;
+				requests.add(new SaveRequest(entry.getKey(), record.imagePath, 
+						copyImage(record.image.getAsBufferedImage()), record.generation));
 			}
 		}
+		imageSaver.save(requests, listener);
+	}
+	
+	/**
+	 * Finish all started saves.
+	 */
+	public void waitForSaves() {
+		imageSaver.waitUntilDone();
+		collectSaveResults();
+	}
+	
+	private void collectSaveResults() {
+		SaveResult result;
+		boolean savedAny = false;
+		while ((result = imageSaver.takeSaveResult()) != null) {
+			ImageRecord record = images.get(result.imageName);
+			if (record == null || record.savingGeneration != result.generation) {
+				continue;
+			}
+			record.savingGeneration = 0;
+			if (result.wasWritten && record.generation == result.generation) {
+				record.wasModified = false;
+				savedAny = true;
+			}
+		}
+		if (savedAny) {
+			dropImagesOverBudget(null);
+		}
+	}
+	
+	private static BufferedImage copyImage(BufferedImage image) {
+		WritableRaster raster = image.copyData(null);
+		return new BufferedImage(image.getColorModel(), raster, image.isAlphaPremultiplied(), null);
+	}
+	
+	private void setModified(ImageRecord record) {
+		record.wasModified = true;
+		record.generation = ++lastGeneration;
 	}
 	
 	public void setImageWasModified(String imageName) {
+		setImageWasModified(imageName, null);
+	}
+	
+	/**
+	 * @param imageName File name of image, eg. "myimage.png".
+	 * @param area Area that was changed, or null if unknown.
+	 */
+	public void setImageWasModified(String imageName, Rectangle area) {
 		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
-		if (images.containsKey(imageName)) {
-			images.get(imageName).wasModified = true;
-			images.get(imageName).image.wasModified();
+		ImageRecord record = images.get(imageName);
+		if (record != null) {
+			setModified(record);
+			record.image.wasModified(area);
+			imageChanged(imageName);
 		}
 	}
 	
 	public void undoLastImageModification(String imageName) {
 		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
-		if (images.containsKey(imageName)) {
-			images.get(imageName).image.undoLastModification();
+		ImageRecord record = images.get(imageName);
+		if (record != null && record.image.undoLastModification()) {
+			setModified(record);
+			imageChanged(imageName);
+		}
+	}
+	
+	public void redoLastImageModification(String imageName) {
+		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
+		ImageRecord record = images.get(imageName);
+		if (record != null && record.image.redoLastUndo()) {
+			setModified(record);
+			imageChanged(imageName);
 		}
 	}
 	
@@ -151,7 +493,7 @@ public class ImageStore {
 		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
 		String imagePath = imageDirectory + imageName;
 		BufferedImage compatibleImage = CompatibleImageCreator.createCompatibleImage(x, y);
-		putNewImage(imageName, imagePath, compatibleImage);
+		putNewImage(imageName, imagePath, compatibleImage, true);
 	}
 	
 	public boolean copyImage(String originalImageName, String newImageName) {
@@ -160,29 +502,42 @@ public class ImageStore {
 		ImageRecord originalImageRecord = getImageRecord(originalImageName);
 		if (originalImageRecord == null) return false;
 		BufferedImage compatibleImage = CompatibleImageCreator.createCompatibleImage(originalImageRecord.image.getAsBufferedImage());
-		putNewImage(newImageName, newImagePath, compatibleImage);
+		putNewImage(newImageName, newImagePath, compatibleImage, true);
 		return true;
 	}
 	
-	private void putNewImage(String imageName, String imagePath, BufferedImage image) {
-		images.put(imageName, new ImageRecord(new ImageWithHistory(image, maxUndoSteps), imagePath));
-		calculateImageSizes();
+	/**
+	 * @param wasModified True if the image isn't on disk yet.
+	 */
+	private void putNewImage(String imageName, String imagePath, BufferedImage image, boolean wasModified) {
+		ImageRecord record = new ImageRecord(new ImageWithHistory(image, historyMemoryBudget, undoJournal), imagePath, wasModified);
+		if (wasModified) {
+			setModified(record);
+		}
+		ImageRecord replaced = images.put(imageName, record);
+		if (replaced != null) {
+			replaced.image.clearHistory();
+			cachedImageBytes -= replaced.estimatedBytes;
+		}
+		cachedImageBytes += record.estimatedBytes;
+		imageChanged(imageName);
+		setImageSize(imageName, image.getWidth(), image.getHeight());
+		updateMaxImageSize();
+		dropImagesOverBudget(imageName);
 	}
 	
 	private boolean loadImage(String imageName) {
 		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
 		String imagePath = imageDirectory + imageName;
 		System.out.print("Load image " + imagePath);
-		BufferedImage loadedImage = null;
-		try {
-		    loadedImage = ImageIO.read(new File(imagePath));
-		} catch (IOException e) {
+		BufferedImage compatibleImage = BackgroundImageLoader.readImage(imagePath);
+		if (compatibleImage == null) {
 			images.put(imageName, null);
+			imageChanged(imageName);
 			System.out.println(" - fail.");
 			return false;
 		}
-		BufferedImage compatibleImage = CompatibleImageCreator.createCompatibleImage(loadedImage);
-		putNewImage(imageName, imagePath, compatibleImage);
+		putNewImage(imageName, imagePath, compatibleImage, false);
 		System.out.println(" - OK.");
 		return true;
 	}
@@ -190,6 +545,7 @@ public class ImageStore {
 	private ImageRecord getImageRecord(String imageName) {
 		if (imageName == null) return null;
 		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
+		collectBackgroundWork();
 		if (!images.containsKey(imageName)) {
 			if (!loadImage(imageName)) {
 				System.out.println("Couldn't find image " + imageName);
@@ -206,4 +562,122 @@ public class ImageStore {
 		}
 		return imageRecord.image.getAsBufferedImage();
 	}
+	
+	/**
+	 * Get image if it is loaded, otherwise start loading it in the background.
+	 * @param imageName File name of image, eg. "myimage.png".
+	 * @return Image, or null if it is being loaded or couldn't be loaded.
+	 */
+	public Image getImageWithoutWaiting(String imageName) {
+		if (imageName == null) return null;
+		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
+		collectBackgroundWork();
+		if (!images.containsKey(imageName)) {
+			backgroundLoader.load(imageName, false);
+			return null;
+		}
+		ImageRecord imageRecord = images.get(imageName);
+		if (imageRecord == null) {
+			return null;
+		}
+		return imageRecord.image.getAsBufferedImage();
+	}
+	
+	private ContentKey getContentKey(String imageName) {
+		ImageRecord imageRecord = getImageRecord(imageName);
+		if (imageRecord == null) {
+			return null;
+		}
+		imageName = makeSurePathHasSuffix(imageName, imageSuffix);
+		long version = getImageVersion(imageName);
+		ContentKey key = contentKeys.get(imageName);
+		if (key == null || key.version != version) {
+			BufferedImage image = imageRecord.image.getAsBufferedImage();
+			Rectangle visibleBounds = AlphaBounds.getVisibleBounds(image);
+			key = new ContentKey(version, visibleBounds, ImageContent.hash(image, visibleBounds));
+			contentKeys.put(imageName, key);
+		}
+		return key;
+	}
+	
+	/**
+	 * Get the area of an image that isn't fully transparent. Kept until the
+	 * image changes.
+	 * @param imageName File name of image, eg. "myimage.png".
+	 * @return Bounds, or null if nothing is visible or the image couldn't be loaded.
+	 */
+	public Rectangle getVisibleBounds(String imageName) {
+		ContentKey key = getContentKey(imageName);
+		if (key == null || key.visibleBounds == null) {
+			return null;
+		}
+		return new Rectangle(key.visibleBounds);
+	}
+	
+	/**
+	 * Get a 64-bit hash of the visible area of an image, see ImageContent.
+	 * Kept until the image changes.
+	 * @param imageName File name of image, eg. "myimage.png".
+	 * @return Hash, 0 if the image couldn't be loaded.
+	 */
+	public long getContentHash(String imageName) {
+		ContentKey key = getContentKey(imageName);
+		return key == null ? 0 : key.hash;
+	}
+	
+	/**
+	 * Find images with the same size and pixels. Candidates are found by
+	 * content hash and then compared pixel by pixel.
+	 * @param imageNames Images to look among.
+	 * @return Groups of identical images, in the order of imageNames. Only
+	 * groups with more than one image.
+	 */
+	public List<List<String>> findIdenticalImages(Collection<String> imageNames) {
+		Map<Long, List<List<String>>> groupsByHash = new HashMap<Long, List<List<String>>>();
+		List<List<String>> groups = new ArrayList<List<String>>();
+		for (String imageName : new LinkedHashSet<String>(imageNames)) {
+			ContentKey key = getContentKey(imageName);
+			if (key == null) continue;
+			List<List<String>> candidates = groupsByHash.get(key.hash);
+			if (candidates == null) {
+				candidates = new ArrayList<List<String>>();
+				groupsByHash.put(key.hash, candidates);
+			}
+			List<String> group = null;
+			for (List<String> candidate : candidates) {
+				if (isSameImage(candidate.get(0), imageName)) {
+					group = candidate;
+					break;
+				}
+			}
+			if (group == null) {
+				group = new ArrayList<String>();
+				candidates.add(group);
+				groups.add(group);
+			}
+			group.add(imageName);
+		}
+		List<List<String>> identical = new ArrayList<List<String>>();
+		for (List<String> group : groups) {
+			if (group.size() > 1) {
+				identical.add(group);
+			}
+		}
+		return identical;
+	}
+	
+	private boolean isSameImage(String imageName, String otherImageName) {
+		BufferedImage image = (BufferedImage)getImage(imageName);
+		BufferedImage otherImage = (BufferedImage)getImage(otherImageName);
+		if (image == null || otherImage == null
+				|| image.getWidth() != otherImage.getWidth() || image.getHeight() != otherImage.getHeight()) {
+			return false;
+		}
+		Rectangle bounds = getVisibleBounds(imageName);
+		Rectangle otherBounds = getVisibleBounds(otherImageName);
+		if (bounds == null || otherBounds == null) {
+			return bounds == otherBounds;
+		}
+		return bounds.equals(otherBounds) && ImageContent.isSameContent(image, bounds, otherImage, otherBounds);
+	}
 }
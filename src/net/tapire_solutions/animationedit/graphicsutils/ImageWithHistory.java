@@ -1,56 +1,491 @@
 package net.tapire_solutions.animationedit.graphicsutils;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.awt.image.ColorModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedList;
 
 /**
- * Image with built-in undo states.
- * It uses a kind of naive approach right now, copying the whole image each time.
+ * Image with built-in undo and redo states.
+ * The image is split into square tiles. The last saved state is kept as a set of
+ * tiles, and each undo state only holds the tiles a modification replaced. Tiles
+ * that did not change are shared, so undo cost and memory scale with the size of
+ * the change, not the size of the image.
  * 
- * TODO: re-do feature.
+ * The memory used by undo states is accounted in a HistoryMemoryBudget, which may
+ * be shared by many images. Undo states older than the most recent ones are rarely
+ * used, they are kept run-length encoded and decoded when undo reaches them.
+ * States evicted from the budget are dropped, or with an UndoJournal, moved to disk.
+ * Journaled states of int images are decoded from the mapped journal straight
+ * into the pixels of the image.
  */
 public class ImageWithHistory {
-	private final int maxSize;
-	private Deque<BufferedImage> imageHistory;
-	
+	private static final int tileSize = 32;
+	private static final int numUncompressedUndoStates = 2;
+	private final int maxUndoSteps;
+	private final HistoryMemoryBudget memoryBudget;
+	private final UndoJournal journal;
+	private final BufferedImage image;
+	private final boolean hasIntPixels;
+	private final int tilesX;
+	private final int tilesY;
+	private int[][] savedTiles;
+	// backing array of int images, see accessPixels()
+	private int[] pixels = null;
+	private int pixelOffset;
+	private int pixelStride;
+	private Deque<TileDelta> undoStates;
+	private Deque<TileDelta> redoStates;
+
+	/**
+	 * A set of tiles that differ from the saved state. For an undo state these are
+	 * the tiles before the modification, for a redo state the tiles after it.
+	 */
+	static class TileDelta {
+		public ImageWithHistory owner;
+		public final int[] tileIndices;
+		public long bytes;
+		private int[][] tiles;
+		private int[] compressedTiles;
+		private UndoJournal.Entry journalEntry;
+		private boolean isDropped = false;
+		public TileDelta(ImageWithHistory owner, int[] tileIndices, int[][] tiles) {
+			this.owner = owner;
+			this.tileIndices = tileIndices;
+			this.tiles = tiles;
+			this.bytes = calculateBytes();
+		}
+		public boolean isCompressed() {
+			return compressedTiles != null;
+		}
+		public boolean isInJournal() {
+			return journalEntry != null;
+		}
+		public boolean isDropped() {
+			return isDropped;
+		}
+		public void drop() {
+			isDropped = true;
+			owner = null;
+			tiles = null;
+			compressedTiles = null;
+			journalEntry = null;
+		}
+		private long calculateBytes() {
+			long numBytes = 16 + 4 * tileIndices.length;
+			if (compressedTiles != null) {
+				return numBytes + 16 + 4 * compressedTiles.length;
+			}
+			for (int[] tile : tiles) {
+				numBytes += 16 + 4 * tile.length;
+			}
+			return numBytes;
+		}
+	}
+
+	/**
+	 * @param image Image to track. It is modified in place, the caller is
+	 * expected to call wasModified() after each change.
+	 * @param maxSize Max number of image states, counting the current image
+	 * and its last saved state.
+	 */
 	public ImageWithHistory(BufferedImage image, int maxSize) {
-		this.maxSize = maxSize;
-		imageHistory = new LinkedList<BufferedImage>();
-		imageHistory.push(image);
-		wasModified(); // save the first fall back state
+		this(image, Math.max(0, maxSize - 2), new HistoryMemoryBudget(Long.MAX_VALUE), null);
+	}
+
+	/**
+	 * @param image Image to track. It is modified in place, the caller is
+	 * expected to call wasModified() after each change.
+	 * @param memoryBudget Budget limiting the undo states of this image. 
+	 */
+	public ImageWithHistory(BufferedImage image, HistoryMemoryBudget memoryBudget) {
+		this(image, Integer.MAX_VALUE, memoryBudget, null);
 	}
-	
+
+	/**
+	 * @param image Image to track. It is modified in place, the caller is
+	 * expected to call wasModified() after each change.
+	 * @param memoryBudget Budget limiting the undo states of this image kept in memory. 
+	 * @param journal Journal to move states to when evicted from the budget, or null to drop them.
+	 */
+	public ImageWithHistory(BufferedImage image, HistoryMemoryBudget memoryBudget, UndoJournal journal) {
+		this(image, Integer.MAX_VALUE, memoryBudget, journal);
+	}
+
+	private ImageWithHistory(BufferedImage image, int maxUndoSteps, HistoryMemoryBudget memoryBudget, UndoJournal journal) {
+		this.maxUndoSteps = maxUndoSteps;
+		this.memoryBudget = memoryBudget;
+		this.journal = journal;
+		this.image = image;
+		WritableRaster raster = image.getRaster();
+		hasIntPixels = raster.getTransferType() == DataBuffer.TYPE_INT && raster.getNumDataElements() == 1;
+		tilesX = (image.getWidth() + tileSize - 1) / tileSize;
+		tilesY = (image.getHeight() + tileSize - 1) / tileSize;
+		undoStates = new LinkedList<TileDelta>();
+		redoStates = new LinkedList<TileDelta>();
+		savedTiles = new int[tilesX * tilesY][];
+		for (int i = 0; i < savedTiles.length; i++) {
+			savedTiles[i] = readTile(i, null);
+		}
+	}
+
 	public void wasModified() {
-		System.out.println(toString() + " Save undo state.");
-		imageHistory.push(deepCopy(imageHistory.peek()));
-		if (imageHistory.size() > maxSize) {
-			imageHistory.removeLast();
+		wasModified(null);
+	}
+
+	/**
+	 * Save an undo state for changes made inside an area. Only the tiles
+	 * touching the area are compared, so the image must not have been
+	 * changed outside it since the last call.
+	 * @param area Changed area, or null to compare the whole image.
+	 */
+	public void wasModified(Rectangle area) {
+		int firstTileX = 0, firstTileY = 0, lastTileX = tilesX - 1, lastTileY = tilesY - 1;
+		if (area != null) {
+			Rectangle clipped = area.intersection(new Rectangle(0, 0, image.getWidth(), image.getHeight()));
+			if (clipped.isEmpty()) {
+				return;
+			}
+			firstTileX = clipped.x / tileSize;
+			firstTileY = clipped.y / tileSize;
+			lastTileX = (clipped.x + clipped.width - 1) / tileSize;
+			lastTileY = (clipped.y + clipped.height - 1) / tileSize;
+		}
+		ArrayList<Integer> changedIndices = new ArrayList<Integer>();
+		ArrayList<int[]> replacedTiles = new ArrayList<int[]>();
+		int[] tile = null;
+		for (int tileY = firstTileY; tileY <= lastTileY; tileY++) {
+			for (int tileX = firstTileX; tileX <= lastTileX; tileX++) {
+				int i = tileY * tilesX + tileX;
+				tile = readTile(i, tile);
+				if (!Arrays.equals(tile, savedTiles[i])) {
+					changedIndices.add(i);
+					replacedTiles.add(savedTiles[i]);
+					savedTiles[i] = tile;
+					tile = null;
+				}
+			}
+		}
+		if (changedIndices.isEmpty()) {
+			return;
+		}
+		int[] tileIndices = new int[changedIndices.size()];
+		for (int i = 0; i < tileIndices.length; i++) {
+			tileIndices[i] = changedIndices.get(i);
+		}
+		System.out.println(toString() + " Save undo state (" + tileIndices.length + " tiles).");
+		dropRedoStates();
+		TileDelta undoState = new TileDelta(this, tileIndices, replacedTiles.toArray(new int[tileIndices.length][]));
+		undoStates.push(undoState);
+		if (undoStates.size() > maxUndoSteps) {
+			memoryBudget.release(undoStates.removeLast());
 			System.out.println(toString() + " Dropped oldest undo state.");
 		}
+		compressOlderUndoStates();
+		memoryBudget.add(undoState);
 	}
 
-	public void undoLastModification() {
-		if (imageHistory.size() <= 2) {
+	/**
+	 * @return True if the image was changed.
+	 */
+	public boolean undoLastModification() {
+		if (undoStates.isEmpty()) {
 			System.out.println(toString() + " No more undos.");
-			return;
+			return false;
 		}
 		System.out.println(toString() + " Undo.");
-		imageHistory.pop(); // pop the current (unmodified) 
-		imageHistory.pop(); // pop the last saved state, it's the same as the current
-		wasModified(); // now make a copy of the save state to modify
+		TileDelta delta = undoStates.peek();
+		if (!swapWithSavedTiles(delta)) {
+			return false;
+		}
+		undoStates.pop();
+		redoStates.push(delta);
+		return true;
+	}
+
+	/**
+	 * @return True if the image was changed.
+	 */
+	public boolean redoLastUndo() {
+		if (redoStates.isEmpty()) {
+			System.out.println(toString() + " No more redos.");
+			return false;
+		}
+		System.out.println(toString() + " Redo.");
+		TileDelta delta = redoStates.peek();
+		if (!swapWithSavedTiles(delta)) {
+			return false;
+		}
+		redoStates.pop();
+		undoStates.push(delta);
+		compressOlderUndoStates();
+		return true;
+	}
+
+	/**
+	 * @return Number of bytes held in memory by undo and redo states.
+	 */
+	public long getHistorySizeInBytes() {
+		long bytes = 0;
+		for (TileDelta delta : undoStates) {
+			if (!delta.isInJournal()) bytes += delta.bytes;
+		}
+		for (TileDelta delta : redoStates) {
+			if (!delta.isInJournal()) bytes += delta.bytes;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Drop all undo and redo states.
+	 */
+	public void clearHistory() {
+		for (TileDelta delta : undoStates) {
+			memoryBudget.release(delta);
+		}
+		undoStates.clear();
+		dropRedoStates();
+	}
+
+	/**
+	 * Called by the memory budget to move one of the oldest states out of memory.
+	 */
+	void evictState(TileDelta state) {
+		if (journal != null) {
+			try {
+				if (!state.isCompressed()) {
+					state.compressedTiles = IntRunLengthCodec.encode(state.tiles);
+					state.tiles = null;
+				}
+				state.journalEntry = journal.append(state.compressedTiles);
+				state.compressedTiles = null;
+				memoryBudget.movedToJournal(state);
+				return;
+			} catch (IOException e) {
+				System.out.println(toString() + " Error writing undo journal: " + e.getMessage());
+			}
+		}
+		if (undoStates.contains(state)) {
+			// older undo states can't be reached without this one
+			TileDelta dropped;
+			do {
+				dropped = undoStates.removeLast();
+				memoryBudget.release(dropped);
+			} while (dropped != state);
+			System.out.println(toString() + " Dropped oldest undo state.");
+		} else if (redoStates.contains(state)) {
+			// later redo states depend on this one
+			dropRedoStates();
+			System.out.println(toString() + " Dropped redo states.");
+		}
+		memoryBudget.release(state);
+	}
+
+	private void dropRedoStates() {
+		for (TileDelta delta : redoStates) {
+			memoryBudget.release(delta);
+		}
+		redoStates.clear();
+	}
+
+	/**
+	 * Compress undo states from the newest uncompressed ones and down,
+	 * until reaching states that are already compressed.
+	 */
+	private void compressOlderUndoStates() {
+		Iterator<TileDelta> it = undoStates.iterator();
+		for (int i = 0; i < numUncompressedUndoStates && it.hasNext(); i++) {
+			it.next();
+		}
+		while (it.hasNext()) {
+			TileDelta delta = it.next();
+			if (delta.isCompressed() || delta.isInJournal()) {
+				break;
+			}
+			delta.compressedTiles = IntRunLengthCodec.encode(delta.tiles);
+			delta.tiles = null;
+			memoryBudget.resize(delta, delta.calculateBytes());
+		}
+	}
+
+	/**
+	 * Make the tiles of a compressed or journaled state available.
+	 * @return False if the state couldn't be read.
+	 */
+	private boolean decompress(TileDelta delta) {
+		if (delta.isInJournal()) {
+			int[][] tiles = allocateTiles(delta);
+			try {
+				IntRunLengthCodec.decode(journal.map(delta.journalEntry), tiles);
+			} catch (IOException e) {
+				System.out.println(toString() + " Error reading undo journal: " + e.getMessage());
+				return false;
+			}
+			delta.tiles = tiles;
+			delta.journalEntry = null;
+			delta.bytes = delta.calculateBytes();
+			memoryBudget.add(delta);
+		} else if (delta.isCompressed()) {
+			int[][] tiles = allocateTiles(delta);
+			IntRunLengthCodec.decode(delta.compressedTiles, tiles);
+			delta.tiles = tiles;
+			delta.compressedTiles = null;
+			memoryBudget.resize(delta, delta.calculateBytes());
+		}
+		return true;
+	}
+
+	private int[][] allocateTiles(TileDelta delta) {
+		int[][] tiles = new int[delta.tileIndices.length][];
+		for (int i = 0; i < tiles.length; i++) {
+			tiles[i] = new int[getTileWidth(delta.tileIndices[i]) * getTileHeight(delta.tileIndices[i])];
+		}
+		return tiles;
+	}
+
+	/**
+	 * Write the tiles of a delta into the image and put the replaced
+	 * tiles in the delta, turning an undo state into a redo state or 
+	 * the other way around.
+	 * @return False if the state couldn't be read.
+	 */
+	private boolean swapWithSavedTiles(TileDelta delta) {
+		if (delta.isInJournal() && accessPixels()) {
+			return swapWithJournaledTiles(delta);
+		}
+		if (!decompress(delta)) {
+			return false;
+		}
+		for (int i = 0; i < delta.tileIndices.length; i++) {
+			int tileIndex = delta.tileIndices[i];
+			int[] tile = delta.tiles[i];
+			delta.tiles[i] = savedTiles[tileIndex];
+			savedTiles[tileIndex] = tile;
+			writeTile(tileIndex, tile);
+		}
+		return true;
+	}
+
+	/**
+	 * Decode a journaled state from the mapped journal straight into the
+	 * pixels of the image, and keep the replaced tiles as the state.
+	 * @return False if the state couldn't be read.
+	 */
+	private boolean swapWithJournaledTiles(TileDelta delta) {
+		IntBuffer encoded;
+		try {
+			encoded = journal.map(delta.journalEntry);
+		} catch (IOException e) {
+			System.out.println(toString() + " Error reading undo journal: " + e.getMessage());
+			return false;
+		}
+		int numTiles = delta.tileIndices.length;
+		int[] offsets = new int[numTiles];
+		int[] widths = new int[numTiles];
+		int[] heights = new int[numTiles];
+		for (int i = 0; i < numTiles; i++) {
+			int tileIndex = delta.tileIndices[i];
+			offsets[i] = pixelOffset + getTileY(tileIndex) * pixelStride + getTileX(tileIndex);
+			widths[i] = getTileWidth(tileIndex);
+			heights[i] = getTileHeight(tileIndex);
+		}
+		IntRunLengthCodec.decode(encoded, pixels, pixelStride, offsets, widths, heights);
+		int[][] tiles = new int[numTiles][];
+		for (int i = 0; i < numTiles; i++) {
+			int tileIndex = delta.tileIndices[i];
+			tiles[i] = savedTiles[tileIndex];
+			savedTiles[tileIndex] = readTile(tileIndex, null);
+		}
+		delta.tiles = tiles;
+		delta.journalEntry = null;
+		delta.bytes = delta.calculateBytes();
+		memoryBudget.add(delta);
+		return true;
+	}
+
+	/**
+	 * Get the backing array of int images, only when first needed since
+	 * Java2D stops accelerating an image once its array has been taken.
+	 * @return False if the image has no backing int array.
+	 */
+	private boolean accessPixels() {
+		if (pixels != null) {
+			return true;
+		}
+		WritableRaster raster = image.getRaster();
+		if (!hasIntPixels || !(raster.getDataBuffer() instanceof DataBufferInt)
+				|| !(raster.getSampleModel() instanceof SinglePixelPackedSampleModel)) {
+			return false;
+		}
+		DataBufferInt dataBuffer = (DataBufferInt)raster.getDataBuffer();
+		pixelStride = ((SinglePixelPackedSampleModel)raster.getSampleModel()).getScanlineStride();
+		pixelOffset = dataBuffer.getOffset()
+				- raster.getSampleModelTranslateY() * pixelStride
+				- raster.getSampleModelTranslateX();
+		pixels = dataBuffer.getData();
+		return true;
 	}
 
 	public BufferedImage getAsBufferedImage() {
-		return imageHistory.peek();
+		return image;
+	}
+
+	private int getTileX(int tileIndex) {
+		return (tileIndex % tilesX) * tileSize;
+	}
+
+	private int getTileY(int tileIndex) {
+		return (tileIndex / tilesX) * tileSize;
+	}
+
+	private int getTileWidth(int tileIndex) {
+		return Math.min(tileSize, image.getWidth() - getTileX(tileIndex));
+	}
+
+	private int getTileHeight(int tileIndex) {
+		return Math.min(tileSize, image.getHeight() - getTileY(tileIndex));
 	}
 
-	private static BufferedImage deepCopy(BufferedImage image) {
-		ColorModel colorModel = image.getColorModel();
-		boolean isAlphaPremultiplied = colorModel.isAlphaPremultiplied();
-		WritableRaster raster = image.copyData(null);
-		return new BufferedImage(colorModel, raster, isAlphaPremultiplied, null);
+	/**
+	 * Copy pixels of a tile out of the image.
+	 * @param tileIndex Tile to read.
+	 * @param tile Array to reuse, or null to allocate a new one.
+	 * @return The tile pixels.
+	 */
+	private int[] readTile(int tileIndex, int[] tile) {
+		int x = getTileX(tileIndex);
+		int y = getTileY(tileIndex);
+		int w = getTileWidth(tileIndex);
+		int h = getTileHeight(tileIndex);
+		if (tile == null || tile.length != w * h) {
+			tile = new int[w * h];
+		}
+		if (hasIntPixels) {
+			image.getRaster().getDataElements(x, y, w, h, tile);
+		} else {
+			image.getRGB(x, y, w, h, tile, 0, w);
+		}
+		return tile;
+	}
+
+	private void writeTile(int tileIndex, int[] tile) {
+		int x = getTileX(tileIndex);
+		int y = getTileY(tileIndex);
+		int w = getTileWidth(tileIndex);
+		int h = getTileHeight(tileIndex);
+		if (hasIntPixels) {
+			image.getRaster().setDataElements(x, y, w, h, tile);
+		} else {
+			image.setRGB(x, y, w, h, tile, 0, w);
+		}
 	}
 }
@@ -0,0 +1,138 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Run-length coding of int pixels, suited for pixel graphics with large flat areas.
+ *
+ * The encoded data is a sequence of blocks. A positive header n is followed by
+ * one value that is repeated n times. A negative header -n is followed by n
+ * literal values.
+ */
+public class IntRunLengthCodec {
+
+	private static final int minRunLength = 3;
+
+	/**
+	 * Encode several arrays as one continuous sequence.
+	 * @param arrays Arrays to encode.
+	 * @return Encoded data.
+	 */
+	public static int[] encode(int[][] arrays) {
+		int length = 0;
+		for (int[] array : arrays) {
+			length += array.length;
+		}
+		int[] values = new int[length];
+		int pos = 0;
+		for (int[] array : arrays) {
+			System.arraycopy(array, 0, values, pos, array.length);
+			pos += array.length;
+		}
+
+		// worst case is one literal header per value that breaks up two runs
+		int[] encoded = new int[length + length / minRunLength + 2];
+		int out = 0;
+		int literalStart = 0;
+		int i = 0;
+		while (i < length) {
+			int runEnd = i + 1;
+			while (runEnd < length && values[runEnd] == values[i]) {
+				runEnd++;
+			}
+			if (runEnd - i >= minRunLength) {
+				out = writeLiterals(values, literalStart, i, encoded, out);
+				encoded[out++] = runEnd - i;
+				encoded[out++] = values[i];
+				literalStart = runEnd;
+			}
+			i = runEnd;
+		}
+		out = writeLiterals(values, literalStart, length, encoded, out);
+		return Arrays.copyOf(encoded, out);
+	}
+
+	private static int writeLiterals(int[] values, int start, int end, int[] encoded, int out) {
+		if (end <= start) return out;
+		encoded[out++] = -(end - start);
+		System.arraycopy(values, start, encoded, out, end - start);
+		return out + end - start;
+	}
+
+	/**
+	 * Decode into arrays of the same lengths as the ones that were encoded.
+	 * @param encoded Encoded data, read from its current position.
+	 * @param arrays Arrays to fill.
+	 */
+	public static void decode(IntBuffer encoded, int[][] arrays) {
+		int arrayIndex = 0;
+		int pos = 0;
+		while (arrayIndex < arrays.length) {
+			int header = encoded.get();
+			boolean isRun = header > 0;
+			int remaining = isRun ? header : -header;
+			int value = isRun ? encoded.get() : 0;
+			while (remaining > 0) {
+				int[] array = arrays[arrayIndex];
+				int count = Math.min(remaining, array.length - pos);
+				if (isRun) {
+					Arrays.fill(array, pos, pos + count, value);
+				} else {
+					encoded.get(array, pos, count);
+				}
+				pos += count;
+				remaining -= count;
+				if (pos == array.length) {
+					arrayIndex++;
+					pos = 0;
+				}
+			}
+		}
+	}
+
+	public static void decode(int[] encoded, int[][] arrays) {
+		decode(IntBuffer.wrap(encoded), arrays);
+	}
+
+	/**
+	 * Decode arrays that were rectangles of pixels into rectangles of a
+	 * larger array, eg. tiles into the pixels of a raster.
+	 * @param encoded Encoded data, read from its current position.
+	 * @param pixels Array to fill.
+	 * @param stride Distance between rows in pixels.
+	 * @param offsets Index in pixels of the first value of each rectangle.
+	 * @param widths Width of each rectangle.
+	 * @param heights Height of each rectangle.
+	 */
+	public static void decode(IntBuffer encoded, int[] pixels, int stride, int[] offsets, int[] widths, int[] heights) {
+		int rectIndex = 0;
+		int row = 0;
+		int pos = 0;
+		while (rectIndex < offsets.length) {
+			int header = encoded.get();
+			boolean isRun = header > 0;
+			int remaining = isRun ? header : -header;
+			int value = isRun ? encoded.get() : 0;
+			while (remaining > 0) {
+				int start = offsets[rectIndex] + row * stride + pos;
+				int count = Math.min(remaining, widths[rectIndex] - pos);
+				if (isRun) {
+					Arrays.fill(pixels, start, start + count, value);
+				} else {
+					encoded.get(pixels, start, count);
+				}
+				pos += count;
+				remaining -= count;
+				if (pos == widths[rectIndex]) {
+					pos = 0;
+					row++;
+					if (row == heights[rectIndex]) {
+						rectIndex++;
+						row = 0;
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Image to compose a view in before drawing it on the screen.
+ *
+ * A compatible BufferedImage in system memory. Views are composed in it
+ * and then drawn into scaled tiles, see ScaledTileCache, and it is the
+ * tiles that are drawn on the screen. Composing reads the buffer back
+ * right after drawing in it, which is fast in system memory and slow in
+ * video memory.
+ */
+public class OffscreenBuffer {
+
+	private int width;
+	private int height;
+	private BufferedImage image = null;
+
+	public OffscreenBuffer(int width, int height) {
+		setSize(width, height);
+	}
+
+	/**
+	 * Change size. The content is dropped if the size changes.
+	 */
+	public void setSize(int width, int height) {
+		width = Math.max(width, 1);
+		height = Math.max(height, 1);
+		if (width == this.width && height == this.height) return;
+		this.width = width;
+		this.height = height;
+		image = null;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Make sure the buffer exists, and get graphics for it.
+	 */
+	public Graphics2D createGraphics() {
+		return getImage().createGraphics();
+	}
+
+	public BufferedImage getImage() {
+		if (image == null) {
+			image = CompatibleImageCreator.createCompatibleImage(width, height);
+		}
+		return image;
+	}
+}
@@ -0,0 +1,328 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * PNG encoder tuned for pixel graphics.
+ *
+ * Images with at most 256 colours are written as palette images, packed to
+ * 1, 2 or 4 bits per pixel when there are few enough colours. Other images are
+ * written as RGB or RGBA with the filter of each row picked adaptively.
+ */
+public class PngEncoder {
+
+	public static final int defaultCompressionLevel = 6;
+
+	private static final byte[] signature = { (byte)137, 80, 78, 71, 13, 10, 26, 10 };
+	private static final int colorTypeRgb = 2;
+	private static final int colorTypePalette = 3;
+	private static final int colorTypeRgba = 6;
+	private static final int maxPaletteSize = 256;
+
+	private final int compressionLevel;
+
+	public PngEncoder() {
+		this(defaultCompressionLevel);
+	}
+
+	/**
+	 * @param compressionLevel Deflate level, 1 is fastest and 9 gives the smallest files.
+	 */
+	public PngEncoder(int compressionLevel) {
+		this.compressionLevel = Math.max(Deflater.NO_COMPRESSION, Math.min(Deflater.BEST_COMPRESSION, compressionLevel));
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void write(BufferedImage image, File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+		try {
+			write(image, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public byte[] encode(BufferedImage image) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		write(image, out);
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write image as PNG. The stream is not closed.
+	 */
+	public void write(BufferedImage image, OutputStream out) throws IOException {
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(signature);
+		int[] palette = findPalette(pixels);
+		if (palette != null) {
+			writePaletteImage(data, pixels, width, height, palette);
+		} else {
+			writeTrueColorImage(data, pixels, width, height);
+		}
+		writeChunk(data, "IEND", new byte[0]);
+		data.flush();
+	}
+
+	/**
+	 * @return Colours of the image with translucent ones first, or null if there are too many.
+	 */
+	private static int[] findPalette(int[] pixels) {
+		IntIndexMap colors = new IntIndexMap(maxPaletteSize * 2);
+		int lastPixel = 0;
+		boolean hasLastPixel = false;
+		for (int pixel : pixels) {
+			pixel = normalizeTransparent(pixel);
+			if (hasLastPixel && pixel == lastPixel) continue;
+			if (colors.get(pixel) < 0) {
+				if (colors.size() == maxPaletteSize) return null;
+				colors.put(pixel, colors.size());
+			}
+			lastPixel = pixel;
+			hasLastPixel = true;
+		}
+		int[] palette = colors.keys();
+		// sort translucent colours first so the transparency chunk stays short
+		long[] sortKeys = new long[palette.length];
+		for (int i = 0; i < palette.length; i++) {
+			int alpha = palette[i] >>> 24;
+			sortKeys[i] = ((long)(alpha == 255 ? 1 : 0) << 32) | (palette[i] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(sortKeys);
+		for (int i = 0; i < palette.length; i++) {
+			palette[i] = (int)sortKeys[i];
+		}
+		return palette;
+	}
+
+	private static int normalizeTransparent(int pixel) {
+		return (pixel >>> 24) == 0 ? 0 : pixel;
+	}
+
+	private void writePaletteImage(DataOutputStream data, int[] pixels, int width, int height, int[] palette) throws IOException {
+		int bitDepth = palette.length <= 2 ? 1 : palette.length <= 4 ? 2 : palette.length <= 16 ? 4 : 8;
+		writeHeader(data, width, height, bitDepth, colorTypePalette);
+
+		byte[] plte = new byte[palette.length * 3];
+		int numTranslucent = 0;
+		IntIndexMap indices = new IntIndexMap(maxPaletteSize * 2);
+		for (int i = 0; i < palette.length; i++) {
+			plte[i * 3] = (byte)(palette[i] >> 16);
+			plte[i * 3 + 1] = (byte)(palette[i] >> 8);
+			plte[i * 3 + 2] = (byte)palette[i];
+			if ((palette[i] >>> 24) != 255) {
+				numTranslucent = i + 1;
+			}
+			indices.put(palette[i], i);
+		}
+		writeChunk(data, "PLTE", plte);
+		if (numTranslucent > 0) {
+			byte[] trns = new byte[numTranslucent];
+			for (int i = 0; i < numTranslucent; i++) {
+				trns[i] = (byte)(palette[i] >>> 24);
+			}
+			writeChunk(data, "tRNS", trns);
+		}
+
+		// filters rarely help packed palette data, so every row uses filter type none
+		int bytesPerRow = (width * bitDepth + 7) / 8;
+		int pixelsPerByte = 8 / bitDepth;
+		byte[] row = new byte[1 + bytesPerRow];
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(compressionLevel);
+		DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater, 64 * 1024);
+		for (int y = 0; y < height; y++) {
+			Arrays.fill(row, (byte)0);
+			int offset = y * width;
+			for (int x = 0; x < width; x++) {
+				int index = indices.get(normalizeTransparent(pixels[offset + x]));
+				int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+				row[1 + x / pixelsPerByte] |= index << shift;
+			}
+			deflaterStream.write(row);
+		}
+		deflaterStream.finish();
+		deflater.end();
+		writeChunk(data, "IDAT", compressed.toByteArray());
+	}
+
+	private void writeTrueColorImage(DataOutputStream data, int[] pixels, int width, int height) throws IOException {
+		boolean hasAlpha = false;
+		for (int pixel : pixels) {
+			if ((pixel >>> 24) != 255) {
+				hasAlpha = true;
+				break;
+			}
+		}
+		int bytesPerPixel = hasAlpha ? 4 : 3;
+		writeHeader(data, width, height, 8, hasAlpha ? colorTypeRgba : colorTypeRgb);
+
+		int bytesPerRow = width * bytesPerPixel;
+		byte[] previousRow = new byte[bytesPerRow];
+		byte[] currentRow = new byte[bytesPerRow];
+		byte[][] filtered = new byte[5][1 + bytesPerRow];
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(compressionLevel);
+		DeflaterOutputStream deflaterStream = new DeflaterOutputStream(compressed, deflater, 64 * 1024);
+		for (int y = 0; y < height; y++) {
+			int offset = y * width;
+			for (int x = 0, i = 0; x < width; x++) {
+				int pixel = pixels[offset + x];
+				currentRow[i++] = (byte)(pixel >> 16);
+				currentRow[i++] = (byte)(pixel >> 8);
+				currentRow[i++] = (byte)pixel;
+				if (hasAlpha) {
+					currentRow[i++] = (byte)(pixel >>> 24);
+				}
+			}
+			deflaterStream.write(filtered[chooseFilter(currentRow, previousRow, bytesPerPixel, filtered)]);
+			byte[] swap = previousRow;
+			previousRow = currentRow;
+			currentRow = swap;
+		}
+		deflaterStream.finish();
+		deflater.end();
+		writeChunk(data, "IDAT", compressed.toByteArray());
+	}
+
+	/**
+	 * Apply all filters to a row and pick the one with the smallest sum of
+	 * absolute differences, as recommended by the PNG specification.
+	 * @return Filter type, also the index of the filtered row.
+	 */
+	private static int chooseFilter(byte[] row, byte[] previousRow, int bytesPerPixel, byte[][] filtered) {
+		int bestFilter = 0;
+		long bestSum = Long.MAX_VALUE;
+		for (int filter = 0; filter < 5; filter++) {
+			byte[] out = filtered[filter];
+			out[0] = (byte)filter;
+			long sum = 0;
+			for (int i = 0; i < row.length; i++) {
+				int current = row[i] & 0xFF;
+				int left = i >= bytesPerPixel ? row[i - bytesPerPixel] & 0xFF : 0;
+				int up = previousRow[i] & 0xFF;
+				int upLeft = i >= bytesPerPixel ? previousRow[i - bytesPerPixel] & 0xFF : 0;
+				int value;
+				switch (filter) {
+				case 1: value = current - left; break;
+				case 2: value = current - up; break;
+				case 3: value = current - ((left + up) >> 1); break;
+				case 4: value = current - paeth(left, up, upLeft); break;
+				default: value = current; break;
+				}
+				out[i + 1] = (byte)value;
+				sum += Math.abs((byte)value);
+			}
+			if (sum < bestSum) {
+				bestSum = sum;
+				bestFilter = filter;
+			}
+		}
+		return bestFilter;
+	}
+
+	private static int paeth(int left, int up, int upLeft) {
+		int p = left + up - upLeft;
+		int pLeft = Math.abs(p - left);
+		int pUp = Math.abs(p - up);
+		int pUpLeft = Math.abs(p - upLeft);
+		if (pLeft <= pUp && pLeft <= pUpLeft) return left;
+		if (pUp <= pUpLeft) return up;
+		return upLeft;
+	}
+
+	private static void writeHeader(DataOutputStream data, int width, int height, int bitDepth, int colorType) throws IOException {
+		ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+		DataOutputStream headerData = new DataOutputStream(header);
+		headerData.writeInt(width);
+		headerData.writeInt(height);
+		headerData.writeByte(bitDepth);
+		headerData.writeByte(colorType);
+		headerData.writeByte(0); // deflate
+		headerData.writeByte(0); // adaptive filtering
+		headerData.writeByte(0); // no interlace
+		writeChunk(data, "IHDR", header.toByteArray());
+	}
+
+	private static void writeChunk(DataOutputStream data, String type, byte[] content) throws IOException {
+		byte[] typeBytes = type.getBytes("US-ASCII");
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(content);
+		data.writeInt(content.length);
+		data.write(typeBytes);
+		data.write(content);
+		data.writeInt((int)crc.getValue());
+	}
+
+	/**
+	 * Small open addressing map from colour to index, for palette lookups
+	 * without boxing.
+	 */
+	private static class IntIndexMap {
+		private final int[] keys;
+		private final int[] values;
+		private final boolean[] used;
+		private final int mask;
+		private int size = 0;
+		private int[] insertionOrder;
+
+		public IntIndexMap(int capacity) {
+			int tableSize = Integer.highestOneBit(capacity * 2 - 1);
+			keys = new int[tableSize];
+			values = new int[tableSize];
+			used = new boolean[tableSize];
+			mask = tableSize - 1;
+			insertionOrder = new int[capacity];
+		}
+
+		private int slot(int key) {
+			int slot = (key * 0x9E3779B9) >>> 16 & mask;
+			while (used[slot] && keys[slot] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		public int get(int key) {
+			int slot = slot(key);
+			return used[slot] ? values[slot] : -1;
+		}
+
+		public void put(int key, int value) {
+			int slot = slot(key);
+			if (!used[slot]) {
+				used[slot] = true;
+				keys[slot] = key;
+				insertionOrder[size++] = key;
+			}
+			values[slot] = value;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int[] keys() {
+			return Arrays.copyOf(insertionOrder, size);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of a zoomed view, split in square tiles in screen coordinates.
+ *
+ * Only tiles inside the area being painted are drawn, and a drawn tile is
+ * kept until it is invalidated or the zoom level changes, so scrolling
+ * around a zoomed image only copies tiles to the screen. Least recently
+ * used tiles are dropped when there are too many. Tiles are compatible
+ * images, which Java2D copies to video memory once they stop changing, so
+ * drawing them on the screen is accelerated where a pipeline exists.
+ *
+ * Screen coordinates are model coordinates times scale, rounded down.
+ */
+public class ScaledTileCache {
+
+	/**
+	 * Draws the content of a tile.
+	 */
+	public interface TileRenderer {
+		/**
+		 * @param g Graphics in screen coordinates, clipped to the tile and cleared to transparent.
+		 * @param area Area of the tile in screen coordinates.
+		 */
+		public void drawTile(Graphics2D g, Rectangle area);
+	}
+
+	private final int tileSize;
+	private int maxTiles;
+	private float scale = 1.0f;
+	// tile images by packed tile column and row, in least recently used order
+	private Map<Long, BufferedImage> tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true);
+	// images of dropped tiles, reused for new tiles
+	private ArrayList<BufferedImage> spareImages = new ArrayList<BufferedImage>();
+
+	/**
+	 * @param tileSize Width and height of tiles in screen pixels.
+	 * @param maxTiles Max number of tiles to keep, until setViewSize() is called.
+	 */
+	public ScaledTileCache(int tileSize, int maxTiles) {
+		this.tileSize = tileSize;
+		this.maxTiles = maxTiles;
+	}
+
+	/**
+	 * Keep twice as many tiles as a view of a size can show, so the whole
+	 * view stays cached while scrolling back and forth.
+	 * @param width Width of the visible area in screen pixels.
+	 * @param height Height of the visible area in screen pixels.
+	 */
+	public void setViewSize(int width, int height) {
+		// a view not aligned to the tiles shows parts of one more column and row
+		int columns = (width + tileSize - 1) / tileSize + 1;
+		int rows = (height + tileSize - 1) / tileSize + 1;
+		maxTiles = 2 * columns * rows;
+		dropTilesOverMax();
+		while (spareImages.size() > maxTiles / 4) {
+			spareImages.remove(spareImages.size() - 1);
+		}
+	}
+
+	/**
+	 * @return Max number of tiles kept.
+	 */
+	public int getMaxTiles() {
+		return maxTiles;
+	}
+
+	/**
+	 * Set zoom level. All tiles are dropped if it changes.
+	 */
+	public void setScale(float scale) {
+		if (scale != this.scale) {
+			this.scale = scale;
+			invalidateAll();
+		}
+	}
+
+	public void invalidateAll() {
+		for (BufferedImage tile : tiles.values()) {
+			recycle(tile);
+		}
+		tiles.clear();
+	}
+
+	private void recycle(BufferedImage tile) {
+		if (spareImages.size() < maxTiles / 4) {
+			spareImages.add(tile);
+		}
+	}
+
+	private int tileIndex(int screenCoord) {
+		// rounds down also for negative coordinates
+		return screenCoord >= 0 ? screenCoord / tileSize : -1 - (-1 - screenCoord) / tileSize;
+	}
+
+	/**
+	 * Drop tiles showing an area.
+	 * @param modelArea Area in unscaled coordinates.
+	 */
+	public void invalidate(Rectangle modelArea) {
+		// one extra pixel on each side for rounding at fractional zoom levels
+		int left = (int)(modelArea.x * scale) - 1;
+		int top = (int)(modelArea.y * scale) - 1;
+		int right = (int)Math.ceil((modelArea.x + modelArea.width) * scale) + 1;
+		int bottom = (int)Math.ceil((modelArea.y + modelArea.height) * scale) + 1;
+		int firstColumn = tileIndex(left);
+		int lastColumn = tileIndex(right);
+		int firstRow = tileIndex(top);
+		int lastRow = tileIndex(bottom);
+		Iterator<Map.Entry<Long, BufferedImage>> it = tiles.entrySet().iterator();
+		while (it.hasNext()) {
+			Map.Entry<Long, BufferedImage> entry = it.next();
+			int column = (int)(entry.getKey() >> 32);
+			int row = (int)(long)entry.getKey();
+			if (column >= firstColumn && column <= lastColumn && row >= firstRow && row <= lastRow) {
+				recycle(entry.getValue());
+				it.remove();
+			}
+		}
+	}
+
+	/**
+	 * Draw an area on the screen, drawing missing tiles first.
+	 * @param area Area to draw in screen coordinates.
+	 */
+	public void draw(Graphics g, Rectangle area, TileRenderer renderer) {
+		if (area.isEmpty()) return;
+		int firstColumn = tileIndex(area.x);
+		int lastColumn = tileIndex(area.x + area.width - 1);
+		int firstRow = tileIndex(area.y);
+		int lastRow = tileIndex(area.y + area.height - 1);
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Long key = ((long)column << 32) | (row & 0xFFFFFFFFL);
+				BufferedImage tile = tiles.get(key);
+				if (tile == null) {
+					tile = drawTile(column, row, renderer);
+					tiles.put(key, tile);
+					dropTilesOverMax();
+				}
+				g.drawImage(tile, column * tileSize, row * tileSize, null);
+			}
+		}
+	}
+
+	private BufferedImage drawTile(int column, int row, TileRenderer renderer) {
+		BufferedImage tile;
+		if (spareImages.isEmpty()) {
+			tile = CompatibleImageCreator.createCompatibleImage(tileSize, tileSize);
+		} else {
+			tile = spareImages.remove(spareImages.size() - 1);
+		}
+		Rectangle area = new Rectangle(column * tileSize, row * tileSize, tileSize, tileSize);
+		Graphics2D g = tile.createGraphics();
+		try {
+			g.setComposite(AlphaComposite.Clear);
+			g.fillRect(0, 0, tileSize, tileSize);
+			g.setComposite(AlphaComposite.SrcOver);
+			g.translate(-area.x, -area.y);
+			g.setClip(area);
+			renderer.drawTile(g, area);
+		} finally {
+			g.dispose();
+		}
+		return tile;
+	}
+
+	private void dropTilesOverMax() {
+		Iterator<BufferedImage> it = tiles.values().iterator();
+		while (tiles.size() > maxTiles && it.hasNext()) {
+			recycle(it.next());
+			it.remove();
+		}
+	}
+}
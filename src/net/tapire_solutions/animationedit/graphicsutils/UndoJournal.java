@@ -0,0 +1,200 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only file where undo states can be moved when they no longer fit in memory.
+ * The journal lives in a temporary directory next to the working directory and is
+ * deleted when closed. States are read back through memory-mapped I/O and decoded
+ * straight from the mapped region.
+ *
+ * The file is mapped in large windows that are reused by all reads, and only
+ * mapped again when the file has grown past the mapped part of a window.
+ * Entries are placed so they never cross a window boundary. Mappings are
+ * released when replaced and on close, so the file can be deleted also on
+ * systems that don't allow deleting mapped files.
+ */
+public class UndoJournal {
+
+	private static final long defaultWindowSize = 64L * 1024 * 1024;
+
+	/**
+	 * Location of one state in the journal.
+	 */
+	public static class Entry {
+		public final long position;
+		public final int numInts;
+		public Entry(long position, int numInts) {
+			this.position = position;
+			this.numInts = numInts;
+		}
+	}
+
+	private final long windowSize;
+	private final File directory;
+	private final File file;
+	private RandomAccessFile randomAccessFile;
+	private FileChannel channel;
+	private long length = 0;
+	// mapped windows by index, null where not mapped yet
+	private List<MappedByteBuffer> windows = new ArrayList<MappedByteBuffer>();
+	// entry larger than a window, mapped on its own until the next read
+	private MappedByteBuffer largeEntryMapping = null;
+
+	/**
+	 * Create a new journal.
+	 * @param workingDirectory Directory to create the journal directory next to,
+	 * or in if its parent can't be written.
+	 * @throws IOException If the journal file couldn't be created.
+	 */
+	public UndoJournal(File workingDirectory) throws IOException {
+		this(workingDirectory, defaultWindowSize);
+	}
+
+	UndoJournal(File workingDirectory, long windowSize) throws IOException {
+		this.windowSize = windowSize;
+		workingDirectory = workingDirectory.getAbsoluteFile().toPath().normalize().toFile();
+		File parent = workingDirectory.getParentFile();
+		if (parent == null || !parent.canWrite()) {
+			parent = workingDirectory;
+		}
+		directory = Files.createTempDirectory(parent.toPath(), "." + workingDirectory.getName() + ".undo-journal").toFile();
+		directory.deleteOnExit();
+		file = new File(directory, "journal.bin");
+		file.deleteOnExit();
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		channel = randomAccessFile.getChannel();
+		System.out.println("Created undo journal " + file.getAbsolutePath());
+	}
+
+	/**
+	 * Append data at the end of the journal.
+	 * @param data Data to write.
+	 * @return Entry to read the data back with.
+	 * @throws IOException On write errors.
+	 */
+	public synchronized Entry append(int[] data) throws IOException {
+		long numBytes = data.length * 4L;
+		long position = length;
+		long windowEnd = (position / windowSize + 1) * windowSize;
+		if (position + numBytes > windowEnd && numBytes <= windowSize) {
+			// start at the next window, the gap is never read
+			position = windowEnd;
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(data.length * 4);
+		buffer.asIntBuffer().put(data);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+		length = position + numBytes;
+		return new Entry(position, data.length);
+	}
+
+	/**
+	 * Map the data of an entry. The view is valid until the next call to
+	 * map() or close(), don't keep it.
+	 * @param entry Entry to map.
+	 * @return Read only view of the entry data.
+	 * @throws IOException On read errors.
+	 */
+	public synchronized IntBuffer map(Entry entry) throws IOException {
+		releaseLargeEntryMapping();
+		long numBytes = entry.numInts * 4L;
+		if (numBytes > windowSize) {
+			largeEntryMapping = channel.map(FileChannel.MapMode.READ_ONLY, entry.position, numBytes);
+			return largeEntryMapping.asIntBuffer();
+		}
+		int windowIndex = (int)(entry.position / windowSize);
+		long windowStart = windowIndex * windowSize;
+		while (windows.size() <= windowIndex) {
+			windows.add(null);
+		}
+		MappedByteBuffer window = windows.get(windowIndex);
+		if (window == null || windowStart + window.capacity() < entry.position + numBytes) {
+			// grown past the mapped part, map all that is written so far
+			if (window != null) {
+				unmap(window);
+			}
+			window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, length - windowStart));
+			windows.set(windowIndex, window);
+		}
+		ByteBuffer view = window.duplicate();
+		view.position((int)(entry.position - windowStart));
+		view.limit((int)(entry.position - windowStart + numBytes));
+		return view.slice().asIntBuffer();
+	}
+
+	public synchronized long getSizeInBytes() throws IOException {
+		return channel.size();
+	}
+
+	/**
+	 * Release mappings, close and delete the journal.
+	 */
+	public synchronized void close() {
+		releaseLargeEntryMapping();
+		for (MappedByteBuffer window : windows) {
+			if (window != null) {
+				unmap(window);
+			}
+		}
+		windows.clear();
+		try {
+			channel.close();
+			randomAccessFile.close();
+		} catch (IOException e) {
+			System.out.println("Error closing undo journal: " + e.getMessage());
+		}
+		if (!file.delete() || !directory.delete()) {
+			System.out.println("Couldn't delete undo journal " + file.getAbsolutePath());
+		}
+	}
+
+	private void releaseLargeEntryMapping() {
+		if (largeEntryMapping != null) {
+			unmap(largeEntryMapping);
+			largeEntryMapping = null;
+		}
+	}
+
+	/**
+	 * Release a mapping now instead of when it is garbage collected. There
+	 * is no public API for it, so it is done through the cleaner of the
+	 * buffer where the platform allows. Otherwise it is left to the garbage
+	 * collector.
+	 */
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (Exception e) {
+			// not available, try the Java 7 and 8 way
+		}
+		try {
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null) {
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// released when garbage collected
+		}
+	}
+}
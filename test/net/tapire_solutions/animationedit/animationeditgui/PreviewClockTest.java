@@ -0,0 +1,36 @@
+package net.tapire_solutions.animationedit.animationeditgui;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PreviewClockTest {
+
+	@Test
+	public void testTicsDontDrift() {
+		PreviewClock clock = new PreviewClock();
+		clock.setTicsPerSecond(60, 1000);
+		// a 16 ms timer would have lost a tic by now
+		assertEquals(59, clock.getTics(1000 + 999999999L));
+		assertEquals(60, clock.getTics(1000 + 1000000000L));
+		assertEquals(60 * 3600, clock.getTics(1000 + 3600 * 1000000000L));
+		// tic 1 starts at 16666666.67 ns after the start
+		assertEquals(1000 + 16666667, clock.getNextTicNanos(1000));
+		assertEquals(0, clock.getTics(1000 + 16666666));
+		assertEquals(1, clock.getTics(1000 + 16666667));
+	}
+
+	@Test
+	public void testTakeNewTicsAndChangeSpeed() {
+		PreviewClock clock = new PreviewClock();
+		clock.setTicsPerSecond(10, 0);
+		assertEquals(3, clock.takeNewTics(350000000L));
+		assertEquals(0, clock.takeNewTics(390000000L));
+		clock.setTicsPerSecond(0, 400000000L);
+		assertEquals(-1, clock.getNextTicNanos(500000000L));
+		assertEquals(1, clock.takeNewTics(900000000L));
+		clock.setTicsPerSecond(2, 1000000000L);
+		assertEquals(0, clock.takeNewTics(1400000000L));
+		assertEquals(1, clock.takeNewTics(1500000000L));
+	}
+}
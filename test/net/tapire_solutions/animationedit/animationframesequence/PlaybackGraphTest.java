@@ -0,0 +1,49 @@
+package net.tapire_solutions.animationedit.animationframesequence;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class PlaybackGraphTest {
+
+	private static AnimationFrame frame(int tics, String tag, String next) {
+		return new AnimationFrame("image.png", 0, 0, tics, tag, next, "", 0, 0);
+	}
+
+	@Test
+	public void testCompile() {
+		List<AnimationFrame> frames = new ArrayList<AnimationFrame>();
+		frames.add(frame(3, "start", ""));
+		frames.add(frame(0, "loop", ""));
+		frames.add(frame(2, "", "loop"));
+		frames.add(frame(1, "loop", "missing"));
+		PlaybackGraph graph = PlaybackGraph.compile(frames);
+
+		assertEquals(4, graph.getNumFrames());
+		assertEquals(1, graph.getNextIndex(0));
+		assertEquals(2, graph.getNextIndex(1));
+		// the first frame with the tag
+		assertEquals(1, graph.getNextIndex(2));
+		// dangling next tag, the frame repeats
+		assertEquals(3, graph.getNextIndex(3));
+		assertEquals("[missing]", graph.getDanglingNextTags().toString());
+
+		assertEquals(3, graph.getTics(0));
+		assertEquals(1, graph.getTics(1));
+		assertEquals(1, graph.getIndexOfTag("loop"));
+		assertEquals(-1, graph.getIndexOfTag("missing"));
+	}
+
+	@Test
+	public void testLastFrameWrapsToFirst() {
+		List<AnimationFrame> frames = new ArrayList<AnimationFrame>();
+		frames.add(frame(1, "", ""));
+		frames.add(frame(1, "", ""));
+		PlaybackGraph graph = PlaybackGraph.compile(frames);
+		assertEquals(0, graph.getNextIndex(1));
+		assertEquals(0, PlaybackGraph.compile(null).getNumFrames());
+	}
+}
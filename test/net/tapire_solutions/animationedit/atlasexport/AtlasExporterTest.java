@@ -0,0 +1,96 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+import net.tapire_solutions.animationedit.graphicsutils.ImageStore;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+public class AtlasExporterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Write a transparent image with an opaque rectangle.
+	 */
+	private static void writeImage(File dir, String name, int width, int height, int x, int y, int w, int h) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int yi = y; yi < y + h; yi++) {
+			for (int xi = x; xi < x + w; xi++) {
+				image.setRGB(xi, yi, 0xFF000000 | (yi - y) << 8 | (xi - x));
+			}
+		}
+		ImageIO.write(image, "png", new File(dir, name));
+	}
+
+	private static int getInt(Element element, String name) {
+		return Integer.parseInt(element.getAttribute(name));
+	}
+
+	@Test
+	public void testTrimmedFrames() throws Exception {
+		File imageDir = folder.newFolder("images");
+		File exportDir = new File(folder.getRoot(), "export");
+		writeImage(imageDir, "a.png", 20, 16, 5, 3, 8, 7);
+		// same pixels, elsewhere in a larger image
+		writeImage(imageDir, "b.png", 30, 30, 11, 20, 8, 7);
+		List<AnimationFrame> frames = new ArrayList<AnimationFrame>();
+		frames.add(new AnimationFrame("a", 2, -1, 1, "", "", "", 0, 0));
+		frames.add(new AnimationFrame("b", 0, 0, 1, "", "", "", 0, 0));
+
+		// left by an export with more pages, and a page of another atlas
+		exportDir.mkdirs();
+		ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), "png", new File(exportDir, "walk_1.png"));
+		ImageIO.write(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), "png", new File(exportDir, "walk_fast_0.png"));
+
+		ImageStore imageStore = new ImageStore(imageDir.getPath());
+		AtlasExporter exporter = new AtlasExporter(64, 1);
+		assertTrue(exporter.export(frames, imageStore, exportDir, "walk"));
+		imageStore.close();
+		assertEquals("[walk_0.png, walk.atlas.xml]", exporter.getExportedFileNames().toString());
+		assertFalse(new File(exportDir, "walk_1.png").exists());
+		assertTrue(new File(exportDir, "walk_fast_0.png").isFile());
+
+		NodeList frameElements = DocumentBuilderFactory.newInstance().newDocumentBuilder()
+				.parse(new File(exportDir, "walk.atlas.xml")).getElementsByTagName("AnimationFrame");
+		assertEquals(2, frameElements.getLength());
+		Element a = (Element)frameElements.item(0);
+		assertEquals(0, getInt(a, "page"));
+		assertEquals(0, getInt(a, "x"));
+		assertEquals(0, getInt(a, "y"));
+		assertEquals(8, getInt(a, "width"));
+		assertEquals(7, getInt(a, "height"));
+		assertEquals(20, getInt(a, "sourceWidth"));
+		assertEquals(16, getInt(a, "sourceHeight"));
+		assertEquals(7, getInt(a, "offsetX"));
+		assertEquals(2, getInt(a, "offsetY"));
+		Element b = (Element)frameElements.item(1);
+		assertEquals(0, getInt(b, "x"));
+		assertEquals(0, getInt(b, "y"));
+		assertEquals(8, getInt(b, "width"));
+		assertEquals(7, getInt(b, "height"));
+		assertEquals(11, getInt(b, "offsetX"));
+		assertEquals(20, getInt(b, "offsetY"));
+
+		BufferedImage page = ImageIO.read(new File(exportDir, "walk_0.png"));
+		assertEquals(8, page.getWidth());
+		assertEquals(7, page.getHeight());
+		assertEquals(0xFF000000, page.getRGB(0, 0));
+		assertEquals(0xFF000607, page.getRGB(7, 6));
+	}
+}
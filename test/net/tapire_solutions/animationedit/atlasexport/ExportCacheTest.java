@@ -0,0 +1,73 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import net.tapire_solutions.animationedit.animationframesequence.AnimationFrame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ExportCacheTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testSequenceKeyChangesWithInputs() throws IOException {
+		File dir = folder.getRoot();
+		File sequenceFile = new File(dir, "walk.xml");
+		File imageFile = new File(dir, "a.png");
+		Files.write(sequenceFile.toPath(), "<AnimationEditFile/>".getBytes("UTF-8"));
+		Files.write(imageFile.toPath(), new byte[] {1, 2, 3});
+		List<AnimationFrame> frames = new ArrayList<AnimationFrame>();
+		frames.add(new AnimationFrame("a", 0, 0, 1, "", "", "", 0, 0));
+
+		String key = ExportCache.getSequenceKey(sequenceFile, frames, "walk", "trim=true");
+		assertEquals(key, ExportCache.getSequenceKey(sequenceFile, frames, "walk", "trim=true"));
+		assertFalse(key.equals(ExportCache.getSequenceKey(sequenceFile, frames, "walk", "trim=false")));
+		assertFalse(key.equals(ExportCache.getSequenceKey(sequenceFile, frames, "run", "trim=true")));
+		Files.write(imageFile.toPath(), new byte[] {1, 2, 4});
+		assertFalse(key.equals(ExportCache.getSequenceKey(sequenceFile, frames, "walk", "trim=true")));
+
+		File exportDir = new File(dir, "export");
+		ExportCache cache = new ExportCache(exportDir);
+		assertFalse(cache.restoreSequence(key, exportDir, "walk"));
+		exportDir.mkdirs();
+		Files.write(new File(exportDir, "walk.atlas.xml").toPath(), new byte[] {5});
+		Files.write(new File(exportDir, "walk_0.png").toPath(), new byte[] {6});
+		cache.storeSequence(key, exportDir, Arrays.asList("walk.atlas.xml", "walk_0.png"));
+		new File(exportDir, "walk.atlas.xml").delete();
+		// left by a later export with more pages, and a page of another atlas
+		Files.write(new File(exportDir, "walk_1.png").toPath(), new byte[] {7});
+		Files.write(new File(exportDir, "walk_fast_0.png").toPath(), new byte[] {8});
+		assertTrue(cache.restoreSequence(key, exportDir, "walk"));
+		assertArrayEquals(new byte[] {5}, Files.readAllBytes(new File(exportDir, "walk.atlas.xml").toPath()));
+		assertTrue(new File(exportDir, "walk_0.png").isFile());
+		assertFalse(new File(exportDir, "walk_1.png").exists());
+		assertTrue(new File(exportDir, "walk_fast_0.png").isFile());
+	}
+
+	@Test
+	public void testPages() throws IOException {
+		File dir = folder.getRoot();
+		ExportCache cache = new ExportCache(dir);
+		BufferedImage page = new BufferedImage(4, 3, BufferedImage.TYPE_INT_ARGB);
+		String key = ExportCache.getPageKey(page, 6);
+		assertFalse(key.equals(ExportCache.getPageKey(page, 9)));
+		assertNull(cache.getPage(key));
+		cache.putPage(key, new byte[] {7, 8});
+		assertArrayEquals(new byte[] {7, 8}, cache.getPage(key));
+		page.setRGB(1, 1, 0xFF000000);
+		assertNull(cache.getPage(ExportCache.getPageKey(page, 6)));
+		assertEquals("sequence cache 0 hits, 0 misses; page cache 1 hits, 2 misses", cache.getStatistics());
+	}
+}
@@ -0,0 +1,57 @@
+package net.tapire_solutions.animationedit.atlasexport;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MaxRectsPackerTest {
+
+	@Test
+	public void testNoOverlaps() {
+		MaxRectsPacker packer = new MaxRectsPacker(256, 256);
+		List<Rectangle> placed = new ArrayList<Rectangle>();
+		List<Integer> pages = new ArrayList<Integer>();
+		Random random = new Random(1);
+		for (int i = 0; i < 200; i++) {
+			int width = 1 + random.nextInt(60);
+			int height = 1 + random.nextInt(60);
+			MaxRectsPacker.Placement placement = packer.insert(width, height);
+			Rectangle rect = new Rectangle(placement.x, placement.y, width, height);
+			assertTrue(new Rectangle(0, 0, 256, 256).contains(rect));
+			for (int j = 0; j < placed.size(); j++) {
+				if (pages.get(j) == placement.page) {
+					assertFalse(rect.intersects(placed.get(j)));
+				}
+			}
+			placed.add(rect);
+			pages.add(placement.page);
+		}
+		assertTrue(packer.getNumPages() > 1);
+	}
+
+	@Test
+	public void testFillsPage() {
+		MaxRectsPacker packer = new MaxRectsPacker(64, 64);
+		for (int i = 0; i < 16; i++) {
+			assertEquals(0, packer.insert(16, 16).page);
+		}
+		assertEquals(1, packer.getNumPages());
+		assertEquals(64, packer.getUsedSize(0).width);
+		assertEquals(64, packer.getUsedSize(0).height);
+		assertEquals(1, packer.insert(1, 1).page);
+	}
+
+	@Test
+	public void testLargerThanPage() {
+		MaxRectsPacker packer = new MaxRectsPacker(64, 64);
+		packer.insert(10, 10);
+		MaxRectsPacker.Placement placement = packer.insert(100, 30);
+		assertEquals(1, placement.page);
+		assertEquals(100, packer.getUsedSize(1).width);
+	}
+}
@@ -0,0 +1,50 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class BrushRasterizerTest {
+
+	private static int countPixels(BufferedImage image, int argb) {
+		int count = 0;
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				if (image.getRGB(x, y) == argb) count++;
+			}
+		}
+		return count;
+	}
+
+	@Test
+	public void testOnePixelLine() {
+		BufferedImage image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_ARGB);
+		Rectangle area = BrushRasterizer.drawLine(image, 2, 3, 12, 7, 0xFFFF0000, 1, false);
+		assertEquals(new Rectangle(2, 3, 11, 5), area);
+		assertEquals(11, countPixels(image, 0xFFFF0000));
+		assertEquals(0xFFFF0000, image.getRGB(2, 3));
+		assertEquals(0xFFFF0000, image.getRGB(12, 7));
+	}
+
+	@Test
+	public void testStamps() {
+		BufferedImage image = new BufferedImage(20, 20, BufferedImage.TYPE_INT_ARGB_PRE);
+		BrushRasterizer.drawLine(image, 5, 5, 5, 5, 0xFF00FF00, 3, false);
+		assertEquals(9, countPixels(image, 0xFF00FF00));
+		BrushRasterizer.drawLine(image, 15, 15, 15, 15, 0xFF0000FF, 3, true);
+		assertEquals(5, countPixels(image, 0xFF0000FF));
+		assertEquals(0, image.getRGB(14, 14));
+	}
+
+	@Test
+	public void testLineClippedToImage() {
+		BufferedImage image = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		Rectangle area = BrushRasterizer.drawLine(image, -5, 5, 20, 5, 0xFFFFFFFF, 4, true);
+		assertEquals(new Rectangle(0, 4, 10, 4), area);
+		assertEquals(40, countPixels(image, 0xFFFFFFFF));
+		assertNull(BrushRasterizer.drawLine(image, -5, -5, -3, -3, 0xFFFFFFFF, 1, false));
+	}
+}
@@ -0,0 +1,128 @@
+package net.tapire_solutions.animationedit.drawingtools;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import net.tapire_solutions.animationedit.drawingtools.FillModeSelector.FillMode;
+
+import org.junit.Test;
+
+public class BucketDrawingToolTest {
+
+	private static BucketDrawingTool createTool(final Color color, final float tolerance) {
+		return new BucketDrawingTool(new CurrentColorSelector() {
+			@Override
+			public Color getColor() {
+				return color;
+			}
+			@Override
+			public void setColor(Color color) {
+			}
+		}, new ColorToleranceSelector() {
+			@Override
+			public float getColorTolerance() {
+				return tolerance;
+			}
+		});
+	}
+
+	@Test
+	public void testFillWideImage() {
+		for (int type : new int[] {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_4BYTE_ABGR}) {
+			BufferedImage image = new BufferedImage(30, 5, type);
+			// wall with a gap at the bottom, and a separate closed box
+			for (int y = 0; y < 4; y++) {
+				image.setRGB(10, y, 0xFF000000);
+			}
+			for (int x = 20; x < 25; x++) {
+				image.setRGB(x, 1, 0xFF000000);
+				image.setRGB(x, 3, 0xFF000000);
+			}
+			image.setRGB(20, 2, 0xFF000000);
+			image.setRGB(24, 2, 0xFF000000);
+
+			Rectangle filled = createTool(Color.RED, 0).fill(image, 0, 0);
+
+			assertEquals(new Rectangle(0, 0, 30, 5), filled);
+			assertEquals(0xFFFF0000, image.getRGB(29, 0));
+			assertEquals(0xFFFF0000, image.getRGB(15, 4));
+			assertEquals(0xFF000000, image.getRGB(10, 0));
+			assertEquals(0, image.getRGB(22, 2)); // inside the box
+		}
+	}
+
+	@Test
+	public void testFillWithTolerance() {
+		BufferedImage image = new BufferedImage(4, 1, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, 0xFF101010);
+		image.setRGB(1, 0, 0xFF141414);
+		image.setRGB(2, 0, 0xFF404040);
+		image.setRGB(3, 0, 0xFF101010);
+		createTool(Color.BLUE, 0.02f).fill(image, 0, 0);
+		assertEquals(0xFF0000FF, image.getRGB(0, 0));
+		assertEquals(0xFF0000FF, image.getRGB(1, 0));
+		assertEquals(0xFF404040, image.getRGB(2, 0));
+		assertEquals(0xFF101010, image.getRGB(3, 0));
+	}
+
+	@Test
+	public void testReplaceColorInAllFrames() {
+		final Map<String, BufferedImage> images = new LinkedHashMap<String, BufferedImage>();
+		final ArrayList<String> modified = new ArrayList<String>();
+		for (int i = 0; i < 3; i++) {
+			BufferedImage image = new BufferedImage(300, 400, BufferedImage.TYPE_INT_ARGB);
+			image.setRGB(i, 399, 0xFF123456);
+			image.setRGB(299, i, 0xFF123457);
+			images.put("frame" + i, image);
+		}
+		BucketDrawingTool tool = new BucketDrawingTool(new CurrentColorSelector() {
+			@Override
+			public Color getColor() {
+				return Color.RED;
+			}
+			@Override
+			public void setColor(Color color) {
+			}
+		}, new ColorToleranceSelector() {
+			@Override
+			public float getColorTolerance() {
+				return 0.01f;
+			}
+		}, new FillModeSelector() {
+			@Override
+			public FillMode getFillMode() {
+				return FillMode.COLOR_IN_ALL_FRAMES;
+			}
+		}, new FrameImageProvider() {
+			@Override
+			public Collection<String> getFrameImageNames() {
+				return images.keySet();
+			}
+			@Override
+			public BufferedImage getFrameImage(String imageName) {
+				return images.get(imageName);
+			}
+			@Override
+			public void setFrameImageModified(String imageName) {
+				modified.add(imageName);
+			}
+		});
+
+		tool.onMouseDown(images.get("frame0"), 0, 399);
+
+		assertEquals("[frame0, frame1, frame2]", modified.toString());
+		for (int i = 0; i < 3; i++) {
+			BufferedImage image = images.get("frame" + i);
+			assertEquals(0xFFFF0000, image.getRGB(i, 399));
+			assertEquals(0xFFFF0000, image.getRGB(299, i));
+			assertEquals(0, image.getRGB(0, 0) >>> 24);
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class AlphaBoundsTest {
+
+	@Test
+	public void testVisibleBounds() {
+		int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE, BufferedImage.TYPE_4BYTE_ABGR};
+		for (int type : types) {
+			BufferedImage image = new BufferedImage(20, 10, type);
+			assertNull(AlphaBounds.getVisibleBounds(image));
+			image.setRGB(5, 2, 0x01000000);
+			assertEquals(new Rectangle(5, 2, 1, 1), AlphaBounds.getVisibleBounds(image));
+			image.setRGB(3, 7, 0xFFFF0000);
+			image.setRGB(12, 4, 0x80FFFFFF);
+			assertEquals(new Rectangle(3, 2, 10, 6), AlphaBounds.getVisibleBounds(image));
+			image.setRGB(19, 9, 0xFF000000);
+			image.setRGB(0, 0, 0xFF000000);
+			assertEquals(new Rectangle(0, 0, 20, 10), AlphaBounds.getVisibleBounds(image));
+		}
+	}
+
+	@Test
+	public void testOpaqueImage() {
+		BufferedImage image = new BufferedImage(7, 3, BufferedImage.TYPE_INT_RGB);
+		assertEquals(new Rectangle(0, 0, 7, 3), AlphaBounds.getVisibleBounds(image));
+	}
+}
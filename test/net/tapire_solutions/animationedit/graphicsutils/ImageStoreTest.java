@@ -0,0 +1,235 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import net.tapire_solutions.animationedit.graphicsutils.BackgroundImageLoader.ImageLoadListener;
+import net.tapire_solutions.animationedit.graphicsutils.ImageStore.ImageStoreMaxSizeChangedListener;
+
+import org.junit.Test;
+
+public class ImageStoreTest {
+
+	private static File createDirectoryWithImage(String name, int width, int height, int color) throws IOException {
+		File dir = Files.createTempDirectory("imagestoretest").toFile();
+		dir.deleteOnExit();
+		writeImage(dir, name, width, height, color);
+		return dir;
+	}
+
+	private static void writeImage(File dir, String name, int width, int height, int color) throws IOException {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		image.setRGB(0, 0, color);
+		File file = new File(dir, name);
+		file.deleteOnExit();
+		ImageIO.write(image, "png", file);
+	}
+
+	@Test
+	public void testLoadWithoutScreen() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 4, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		BufferedImage image = (BufferedImage)imageStore.getImage("a");
+		assertNotNull(image);
+		assertEquals(0xFF123456, image.getRGB(0, 0));
+		assertNull(imageStore.getImage("missing"));
+		imageStore.close();
+	}
+
+	@Test
+	public void testSaveModifiedImage() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 4, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		BufferedImage image = (BufferedImage)imageStore.getImage("a.png");
+		image.setRGB(1, 1, 0xFFFF0000);
+		imageStore.setImageWasModified("a.png");
+		imageStore.writeModifiedImagesToDisk();
+
+		// edits after the save started are not part of it
+		image.setRGB(2, 2, 0xFF00FF00);
+		imageStore.waitForSaves();
+
+		BufferedImage saved = ImageIO.read(new File(dir, "a.png"));
+		assertEquals(0xFFFF0000, saved.getRGB(1, 1));
+		assertEquals(0, saved.getRGB(2, 2) >>> 24);
+		assertEquals(1, dir.list().length); // no temp files left
+		imageStore.close();
+	}
+
+	@Test
+	public void testMaxSizeChangedOnlyOnChange() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 4, 0xFF123456);
+		writeImage(dir, "b.png", 2, 2, 0xFF123456);
+		writeImage(dir, "c.png", 3, 9, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		final ArrayList<String> sizes = new ArrayList<String>();
+		imageStore.addMaxSizeChangedListener(new ImageStoreMaxSizeChangedListener() {
+			@Override
+			public void maxSizeChanged(int maxX, int maxY) {
+				sizes.add(maxX + "x" + maxY);
+			}
+		});
+		imageStore.getImage("a.png");
+		imageStore.getImage("b.png");
+		imageStore.getImage("c.png");
+		assertEquals("[8x4, 8x9]", sizes.toString());
+		assertEquals(8, imageStore.getMaxWidthOfImage());
+		assertEquals(9, imageStore.getMaxHeightOfImage());
+		imageStore.close();
+	}
+
+	@Test
+	public void testImageVersionChangesWithContent() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 4, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		assertEquals(0, imageStore.getImageVersion("a.png"));
+		BufferedImage image = (BufferedImage)imageStore.getImage("a.png");
+		long loaded = imageStore.getImageVersion("a.png");
+		assertTrue(loaded != 0);
+		assertEquals(loaded, imageStore.getImageVersion("a"));
+
+		image.setRGB(1, 1, 0xFFFF0000);
+		imageStore.setImageWasModified("a.png");
+		long modified = imageStore.getImageVersion("a.png");
+		assertTrue(modified != loaded);
+
+		imageStore.undoLastImageModification("a.png");
+		assertTrue(imageStore.getImageVersion("a.png") != modified);
+		imageStore.close();
+	}
+
+	@Test
+	public void testLeastRecentlyUsedDroppedWhenBudgetLowered() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 8, 0xFF123456);
+		writeImage(dir, "b.png", 8, 8, 0xFF123456);
+		writeImage(dir, "c.png", 8, 8, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		Image a = imageStore.getImage("a.png");
+		long imageBytes = imageStore.getCachedImageBytes();
+		Image b = imageStore.getImage("b.png");
+		Image c = imageStore.getImage("c.png");
+		assertSame(a, imageStore.getImage("a.png"));
+		assertEquals(3 * imageBytes, imageStore.getCachedImageBytes());
+
+		// b is the least recently used
+		imageStore.setMaxCachedImageBytes(2 * imageBytes);
+		assertEquals(2 * imageBytes, imageStore.getCachedImageBytes());
+		assertSame(a, imageStore.getImage("a.png"));
+		assertSame(c, imageStore.getImage("c.png"));
+		assertNotSame(b, imageStore.getImage("b.png"));
+		assertEquals(2 * imageBytes, imageStore.getCachedImageBytes());
+		imageStore.close();
+	}
+
+	@Test
+	public void testModifiedImageKeptUntilSaveCollected() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 8, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		BufferedImage image = (BufferedImage)imageStore.getImage("a.png");
+		long imageBytes = imageStore.getCachedImageBytes();
+		image.setRGB(1, 1, 0xFFFF0000);
+		imageStore.setImageWasModified("a.png");
+		imageStore.setMaxCachedImageBytes(0);
+		assertEquals(imageBytes, imageStore.getCachedImageBytes());
+		assertSame(image, imageStore.getImage("a.png"));
+
+		// modified again while saving, the save doesn't cover it
+		imageStore.writeModifiedImagesToDisk();
+		image.setRGB(2, 2, 0xFF00FF00);
+		imageStore.setImageWasModified("a.png");
+		imageStore.waitForSaves();
+		assertEquals(imageBytes, imageStore.getCachedImageBytes());
+		assertSame(image, imageStore.getImage("a.png"));
+
+		imageStore.writeModifiedImagesToDisk();
+		assertEquals(imageBytes, imageStore.getCachedImageBytes());
+		imageStore.waitForSaves();
+		assertEquals(0, imageStore.getCachedImageBytes());
+		imageStore.close();
+	}
+
+	@Test
+	public void testDroppedImageReloadsOnGet() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 8, 0xFF123456);
+		writeImage(dir, "b.png", 8, 8, 0xFF654321);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		BufferedImage a = (BufferedImage)imageStore.getImage("a.png");
+		a.setRGB(1, 1, 0xFFFF0000);
+		imageStore.setImageWasModified("a.png");
+		imageStore.writeModifiedImagesToDisk();
+		imageStore.waitForSaves();
+		long version = imageStore.getImageVersion("a.png");
+
+		imageStore.setMaxCachedImageBytes(imageStore.getCachedImageBytes());
+		imageStore.getImage("b.png");
+		BufferedImage reloaded = (BufferedImage)imageStore.getImage("a.png");
+		assertNotSame(a, reloaded);
+		assertEquals(0xFF123456, reloaded.getRGB(0, 0));
+		assertEquals(0xFFFF0000, reloaded.getRGB(1, 1));
+		assertTrue(imageStore.getImageVersion("a.png") != version);
+		imageStore.close();
+	}
+
+	@Test
+	public void testReloadDuringBackgroundLoad() throws Exception {
+		File dir = createDirectoryWithImage("a.png", 8, 8, 0xFF123456);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		final CountDownLatch loaded = new CountDownLatch(1);
+		imageStore.addImageLoadListener(new ImageLoadListener() {
+			@Override
+			public void onImageLoaded(String imageName, int numLoaded, int numRequested) {
+				loaded.countDown();
+			}
+			@Override
+			public void onAllImagesLoaded(int numLoaded, long millis) {
+			}
+		});
+		assertNull(imageStore.getImageWithoutWaiting("a.png"));
+		assertTrue(loaded.await(10, TimeUnit.SECONDS));
+
+		// the file changes after it was read, before the image is collected
+		writeImage(dir, "a.png", 8, 8, 0xFF654321);
+		imageStore.reloadImage("a.png");
+		assertFalse(imageStore.isImageLoading("a.png"));
+		BufferedImage image = (BufferedImage)imageStore.getImage("a.png");
+		assertEquals(0xFF654321, image.getRGB(0, 0));
+		imageStore.close();
+	}
+
+	@Test
+	public void testFindIdenticalImages() throws IOException {
+		File dir = createDirectoryWithImage("a.png", 8, 4, 0xFF123456);
+		writeImage(dir, "b.png", 8, 4, 0xFF123456);
+		writeImage(dir, "c.png", 8, 4, 0xFF654321);
+		writeImage(dir, "d.png", 9, 4, 0xFF123456);
+		writeImage(dir, "e.png", 8, 4, 0xFF654321);
+		ImageStore imageStore = new ImageStore(dir.getPath());
+		assertEquals(new Rectangle(0, 0, 1, 1), imageStore.getVisibleBounds("a"));
+		// same visible pixels, different size
+		assertEquals(imageStore.getContentHash("a"), imageStore.getContentHash("d"));
+		assertTrue(imageStore.getContentHash("a") != imageStore.getContentHash("c"));
+
+		List<List<String>> identical = imageStore.findIdenticalImages(Arrays.asList("a", "c", "d", "b", "e", "a"));
+		assertEquals("[[a, b], [c, e]]", identical.toString());
+
+		BufferedImage image = (BufferedImage)imageStore.getImage("b.png");
+		image.setRGB(1, 1, 0xFFFF0000);
+		imageStore.setImageWasModified("b.png");
+		identical = imageStore.findIdenticalImages(Arrays.asList("a", "b", "c", "e"));
+		assertEquals("[[c, e]]", identical.toString());
+		imageStore.close();
+	}
+}
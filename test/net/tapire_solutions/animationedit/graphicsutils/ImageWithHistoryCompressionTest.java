@@ -0,0 +1,78 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class ImageWithHistoryCompressionTest {
+
+	private static final int imageSize = 256;
+	private static final int numModifications = 40;
+	
+	private static int colorOfStep(int step) {
+		return 0xFF000000 | (step * 0x050301);
+	}
+	
+	private static BufferedImage createPixelArt() {
+		BufferedImage image = new BufferedImage(imageSize, imageSize, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.BLUE);
+		g.fillRect(0, 0, imageSize, imageSize / 2);
+		g.setColor(Color.GREEN);
+		g.fillRect(0, imageSize / 2, imageSize, imageSize / 2);
+		g.dispose();
+		return image;
+	}
+	
+	@Test
+	public void testOlderStatesAreCompressed() {
+		ImageWithHistory imageWithHistory = new ImageWithHistory(createPixelArt(), 100);
+		
+		for (int step = 1; step <= numModifications; step++) {
+			Graphics2D g = imageWithHistory.getAsBufferedImage().createGraphics();
+			g.setColor(new Color(colorOfStep(step), true));
+			g.fillRect(4, 4, imageSize - 8, imageSize - 8);
+			g.dispose();
+			imageWithHistory.wasModified();
+		}
+		
+		// each modification replaced the whole image
+		long uncompressedBytes = (long)numModifications * imageSize * imageSize * 4;
+		long retainedBytes = imageWithHistory.getHistorySizeInBytes();
+		System.out.println("History retains " + retainedBytes + " of " + uncompressedBytes + " bytes.");
+		assertTrue(retainedBytes * 10 < uncompressedBytes);
+		
+		for (int step = numModifications - 1; step >= 1; step--) {
+			imageWithHistory.undoLastModification();
+			assertEquals(colorOfStep(step), imageWithHistory.getAsBufferedImage().getRGB(imageSize / 2, imageSize / 2));
+			assertEquals(colorOfStep(step), imageWithHistory.getAsBufferedImage().getRGB(4, 4));
+		}
+		imageWithHistory.undoLastModification();
+		assertEquals(Color.BLUE.getRGB(), imageWithHistory.getAsBufferedImage().getRGB(10, 10));
+		assertEquals(Color.GREEN.getRGB(), imageWithHistory.getAsBufferedImage().getRGB(10, imageSize - 10));
+		
+		for (int step = 1; step <= numModifications; step++) {
+			imageWithHistory.redoLastUndo();
+			assertEquals(colorOfStep(step), imageWithHistory.getAsBufferedImage().getRGB(imageSize / 2, imageSize / 2));
+		}
+	}
+	
+	@Test
+	public void testRunLengthCodecRoundTrip() {
+		int[][] arrays = {
+				{ 1, 1, 1, 1, 2, 3, 3 },
+				{ 3, 3, 4 },
+				{ 5, 6, 7, 8 },
+				{ 9, 9, 9, 9, 9, 9, 9, 9, 9 } };
+		int[] encoded = IntRunLengthCodec.encode(arrays);
+		int[][] decoded = { new int[7], new int[3], new int[4], new int[9] };
+		IntRunLengthCodec.decode(encoded, decoded);
+		for (int i = 0; i < arrays.length; i++) {
+			assertArrayEquals(arrays[i], decoded[i]);
+		}
+	}
+}
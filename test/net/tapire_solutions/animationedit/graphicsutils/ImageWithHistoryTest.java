@@ -2,7 +2,11 @@ package net.tapire_solutions.animationedit.graphicsutils;
 
 import static org.junit.Assert.*;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 import org.junit.Test;
 
@@ -70,4 +74,167 @@ public class ImageWithHistoryTest {
 		assertEquals(0x00110000, imageWithHistory.getAsBufferedImage().getRGB(0, 0)); // no more undos
 	}
 
+	@Test
+	public void testUndoInPartialEdgeTile() {
+		BufferedImage originalImage = new BufferedImage(70, 40, BufferedImage.TYPE_INT_ARGB);
+		originalImage.setRGB(69, 39, 0x00330000);
+		ImageWithHistory imageWithHistory = new ImageWithHistory(originalImage, 30);
+		
+		imageWithHistory.getAsBufferedImage().setRGB(69, 39, 0x00110000);
+		imageWithHistory.getAsBufferedImage().setRGB(0, 0, 0x00FF0000);
+		imageWithHistory.wasModified();
+		imageWithHistory.getAsBufferedImage().setRGB(69, 39, 0x00FF0000);
+		imageWithHistory.wasModified();
+		assertEquals(0x00FF0000, imageWithHistory.getAsBufferedImage().getRGB(69, 39));
+		imageWithHistory.undoLastModification();
+		assertEquals(0x00110000, imageWithHistory.getAsBufferedImage().getRGB(69, 39));
+		assertEquals(0x00FF0000, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+		imageWithHistory.undoLastModification();
+		assertEquals(0x00330000, imageWithHistory.getAsBufferedImage().getRGB(69, 39));
+		assertEquals(0x00000000, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+	}
+
+	@Test
+	public void testUndoThenRedo() {
+		BufferedImage originalImage = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB);
+		originalImage.setRGB(0, 0, 0x00330000);
+		ImageWithHistory imageWithHistory = new ImageWithHistory(originalImage, 30);
+		
+		imageWithHistory.getAsBufferedImage().setRGB(0, 0, 0x00110000);
+		imageWithHistory.wasModified();
+		imageWithHistory.getAsBufferedImage().setRGB(0, 0, 0x00FF0000);
+		imageWithHistory.wasModified();
+		imageWithHistory.undoLastModification();
+		imageWithHistory.undoLastModification();
+		assertEquals(0x00330000, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+		imageWithHistory.redoLastUndo();
+		assertEquals(0x00110000, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+		imageWithHistory.redoLastUndo();
+		assertEquals(0x00FF0000, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+		imageWithHistory.redoLastUndo();
+		assertEquals(0x00FF0000, imageWithHistory.getAsBufferedImage().getRGB(0, 0)); // no more redos
+		
+		// a new modification drops the redo states
+		imageWithHistory.undoLastModification();
+		imageWithHistory.getAsBufferedImage().setRGB(0, 0, 0x0000FF00);
+		imageWithHistory.wasModified();
+		imageWithHistory.redoLastUndo();
+		assertEquals(0x0000FF00, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+		imageWithHistory.undoLastModification();
+		assertEquals(0x00110000, imageWithHistory.getAsBufferedImage().getRGB(0, 0));
+	}
+	
+	@Test
+	public void testSharedMemoryBudgetDropsOldestState() {
+		HistoryMemoryBudget budget = new HistoryMemoryBudget(1000);
+		ImageWithHistory first = new ImageWithHistory(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), budget);
+		ImageWithHistory second = new ImageWithHistory(new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), budget);
+		
+		// each state holds one 10x10 tile, so only two fit in the budget
+		first.getAsBufferedImage().setRGB(0, 0, 0x00110000);
+		first.wasModified();
+		second.getAsBufferedImage().setRGB(0, 0, 0x00220000);
+		second.wasModified();
+		assertTrue(budget.getUsedBytes() <= 1000);
+		first.getAsBufferedImage().setRGB(0, 0, 0x00330000);
+		first.wasModified();
+		assertTrue(budget.getUsedBytes() <= 1000);
+		
+		first.undoLastModification();
+		assertEquals(0x00110000, first.getAsBufferedImage().getRGB(0, 0));
+		first.undoLastModification();
+		assertEquals(0x00110000, first.getAsBufferedImage().getRGB(0, 0)); // oldest state was dropped
+		second.undoLastModification();
+		assertEquals(0x00000000, second.getAsBufferedImage().getRGB(0, 0));
+	}
+
+	@Test
+	public void testUndoStatesMovedToJournal() throws IOException {
+		File workingDirectory = Files.createTempDirectory("journaltest").toFile();
+		UndoJournal journal = new UndoJournal(workingDirectory);
+		HistoryMemoryBudget budget = new HistoryMemoryBudget(1000);
+		ImageWithHistory imageWithHistory = new ImageWithHistory(
+				new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB), budget, journal);
+		
+		for (int i = 1; i <= 20; i++) {
+			imageWithHistory.getAsBufferedImage().setRGB(i % 10, 0, i);
+			imageWithHistory.wasModified();
+			assertTrue(budget.getUsedBytes() <= 1000);
+		}
+		assertTrue(journal.getSizeInBytes() > 0);
+		
+		for (int i = 20; i >= 1; i--) {
+			assertEquals(i, imageWithHistory.getAsBufferedImage().getRGB(i % 10, 0));
+			imageWithHistory.undoLastModification();
+		}
+		for (int x = 0; x < 10; x++) {
+			assertEquals(0, imageWithHistory.getAsBufferedImage().getRGB(x, 0));
+		}
+		imageWithHistory.clearHistory();
+		journal.close();
+		workingDirectory.delete();
+	}
+
+	@Test
+	public void testJournaledStatesDecodedIntoImage() throws IOException {
+		File workingDirectory = Files.createTempDirectory("journaltest").toFile();
+		UndoJournal journal = new UndoJournal(workingDirectory);
+		int[] types = {BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_4BYTE_ABGR};
+		for (int type : types) {
+			// tiles of different sizes at the right and bottom edges
+			BufferedImage image = new BufferedImage(70, 40, type);
+			HistoryMemoryBudget budget = new HistoryMemoryBudget(0);
+			ImageWithHistory imageWithHistory = new ImageWithHistory(image, budget, journal);
+			for (int i = 1; i <= 3; i++) {
+				for (int y = 0; y < image.getHeight(); y++) {
+					for (int x = 0; x < image.getWidth(); x++) {
+						image.setRGB(x, y, 0xFF000000 | (i << 16) | (y << 8) | x);
+					}
+				}
+				imageWithHistory.wasModified();
+			}
+			// all but the newest state are in the journal
+			assertTrue(journal.getSizeInBytes() > 0);
+
+			for (int i = 2; i >= 0; i--) {
+				assertTrue(imageWithHistory.undoLastModification());
+				for (int y = 0; y < image.getHeight(); y++) {
+					for (int x = 0; x < image.getWidth(); x++) {
+						int expected = i == 0 ? 0 : 0xFF000000 | (i << 16) | (y << 8) | x;
+						assertEquals(expected, image.getRGB(x, y));
+					}
+				}
+			}
+			assertTrue(imageWithHistory.redoLastUndo());
+			assertEquals(0xFF010000 | (39 << 8) | 69, image.getRGB(69, 39));
+
+			// a change after undo is compared with the decoded state
+			image.setRGB(35, 20, 0xFFFFFFFF);
+			imageWithHistory.wasModified();
+			imageWithHistory.undoLastModification();
+			assertEquals(0xFF010000 | (20 << 8) | 35, image.getRGB(35, 20));
+			imageWithHistory.clearHistory();
+		}
+		journal.close();
+		workingDirectory.delete();
+	}
+
+	@Test
+	public void testModifiedAreaOnlyComparesTouchedTiles() {
+		BufferedImage originalImage = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+		ImageWithHistory imageWithHistory = new ImageWithHistory(originalImage, 30);
+		originalImage.setRGB(70, 70, 0xFF00FF00);
+		imageWithHistory.wasModified(new Rectangle(70, 70, 1, 1));
+		assertTrue(imageWithHistory.getHistorySizeInBytes() > 0);
+		long bytesForOneTile = imageWithHistory.getHistorySizeInBytes();
+
+		// a change outside the reported area isn't seen until the whole image is compared
+		originalImage.setRGB(1, 1, 0xFF0000FF);
+		imageWithHistory.wasModified(new Rectangle(64, 64, 36, 36));
+		assertEquals(bytesForOneTile, imageWithHistory.getHistorySizeInBytes());
+		imageWithHistory.wasModified();
+		imageWithHistory.undoLastModification();
+		assertEquals(0, originalImage.getRGB(1, 1));
+		assertEquals(0xFF00FF00, originalImage.getRGB(70, 70));
+	}
 }
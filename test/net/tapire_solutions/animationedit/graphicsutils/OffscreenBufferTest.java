@@ -0,0 +1,32 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+public class OffscreenBufferTest {
+
+	@Test
+	public void testDrawWithoutScreen() {
+		CompatibleImageCreator.setMode(CompatibleImageCreator.Mode.HEADLESS);
+		try {
+			OffscreenBuffer buffer = new OffscreenBuffer(0, 0);
+			assertEquals(1, buffer.getWidth());
+			buffer.setSize(20, 10);
+			Graphics2D g = buffer.createGraphics();
+			g.setColor(Color.RED);
+			g.fillRect(2, 3, 1, 1);
+			g.dispose();
+			BufferedImage image = buffer.getImage();
+			assertEquals(20, image.getWidth());
+			assertEquals(10, image.getHeight());
+			assertEquals(0xFFFF0000, image.getRGB(2, 3));
+		} finally {
+			CompatibleImageCreator.setMode(CompatibleImageCreator.Mode.AUTO);
+		}
+	}
+}
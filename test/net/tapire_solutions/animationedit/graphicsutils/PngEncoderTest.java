@@ -0,0 +1,62 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PngEncoderTest {
+
+	private static BufferedImage decode(byte[] png) throws IOException {
+		return ImageIO.read(new ByteArrayInputStream(png));
+	}
+
+	private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getHeight(), actual.getHeight());
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				int pixel = expected.getRGB(x, y);
+				if ((pixel >>> 24) == 0) {
+					assertEquals(0, actual.getRGB(x, y) >>> 24);
+				} else {
+					assertEquals(pixel, actual.getRGB(x, y));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFewColorsGivesPaletteImage() throws IOException {
+		BufferedImage image = new BufferedImage(37, 21, BufferedImage.TYPE_INT_ARGB);
+		int[] colors = { 0x00000000, 0xFF112233, 0x80FF0000, 0xFF00FF00, 0xFFFFFFFF };
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, colors[(x / 3 + y) % colors.length]);
+			}
+		}
+		byte[] png = new PngEncoder().encode(image);
+		assertEquals(3, png[8 + 8 + 9]); // color type in header
+		assertSamePixels(image, decode(png));
+	}
+
+	@Test
+	public void testManyColorsGivesTrueColorImage() throws IOException {
+		BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_ARGB);
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				image.setRGB(x, y, ((x * 6) << 16) | ((y * 8) << 8) | (x ^ y) | ((255 - x) << 24));
+			}
+		}
+		for (int level = 1; level <= 9; level += 4) {
+			byte[] png = new PngEncoder(level).encode(image);
+			assertEquals(6, png[8 + 8 + 9]);
+			assertSamePixels(image, decode(png));
+		}
+	}
+}
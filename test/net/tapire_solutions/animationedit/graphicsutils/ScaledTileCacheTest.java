@@ -0,0 +1,101 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class ScaledTileCacheTest {
+
+	/**
+	 * Records the tiles drawn.
+	 */
+	private static class RecordingRenderer implements ScaledTileCache.TileRenderer {
+		public List<Rectangle> drawnTiles = new ArrayList<Rectangle>();
+		@Override
+		public void drawTile(Graphics2D g, Rectangle area) {
+			drawnTiles.add(new Rectangle(area));
+		}
+	}
+
+	private static void draw(ScaledTileCache cache, Rectangle area, RecordingRenderer renderer) {
+		BufferedImage screen = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = screen.createGraphics();
+		cache.draw(g, area, renderer);
+		g.dispose();
+	}
+
+	@Test
+	public void testInvalidateAtFractionalScale() {
+		ScaledTileCache cache = new ScaledTileCache(10, 100);
+		cache.setScale(1.5f);
+		RecordingRenderer renderer = new RecordingRenderer();
+		Rectangle screenArea = new Rectangle(0, 0, 40, 40);
+		draw(cache, screenArea, renderer);
+		assertEquals(16, renderer.drawnTiles.size());
+
+		// model pixel 6 is on screen x 9 to 10.5, on the edge of two tiles
+		cache.invalidate(new Rectangle(6, 0, 1, 1));
+		renderer.drawnTiles.clear();
+		draw(cache, screenArea, renderer);
+		assertEquals(2, renderer.drawnTiles.size());
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(0, 0, 10, 10)));
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(10, 0, 10, 10)));
+
+		// model pixel 13 ends on screen x 19.5 to 21, in the next tile
+		cache.invalidate(new Rectangle(13, 20, 1, 1));
+		renderer.drawnTiles.clear();
+		draw(cache, screenArea, renderer);
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(10, 30, 10, 10)));
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(20, 30, 10, 10)));
+		for (Rectangle tile : renderer.drawnTiles) {
+			assertTrue(tile.intersects(new Rectangle(18, 28, 5, 5)));
+		}
+	}
+
+	@Test
+	public void testNegativeTileIndices() {
+		ScaledTileCache cache = new ScaledTileCache(10, 100);
+		RecordingRenderer renderer = new RecordingRenderer();
+		Rectangle screenArea = new Rectangle(-25, -5, 20, 10);
+		draw(cache, screenArea, renderer);
+		assertEquals(6, renderer.drawnTiles.size());
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(-30, -10, 10, 10)));
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(-10, 0, 10, 10)));
+
+		renderer.drawnTiles.clear();
+		draw(cache, screenArea, renderer);
+		assertEquals(0, renderer.drawnTiles.size());
+
+		cache.invalidate(new Rectangle(-12, -3, 1, 1));
+		draw(cache, screenArea, renderer);
+		assertEquals(2, renderer.drawnTiles.size());
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(-20, -10, 10, 10)));
+		assertTrue(renderer.drawnTiles.contains(new Rectangle(-10, -10, 10, 10)));
+	}
+
+	@Test
+	public void testMaxTilesFromViewSize() {
+		ScaledTileCache cache = new ScaledTileCache(10, 4);
+		cache.setViewSize(40, 40);
+		assertEquals(2 * 5 * 5, cache.getMaxTiles());
+
+		RecordingRenderer renderer = new RecordingRenderer();
+		Rectangle screenArea = new Rectangle(5, 5, 40, 40);
+		draw(cache, screenArea, renderer);
+		assertEquals(25, renderer.drawnTiles.size());
+		renderer.drawnTiles.clear();
+		draw(cache, screenArea, renderer);
+		assertEquals(0, renderer.drawnTiles.size());
+
+		cache.setViewSize(10, 10);
+		assertEquals(2 * 2 * 2, cache.getMaxTiles());
+		draw(cache, screenArea, renderer);
+		assertEquals(25, renderer.drawnTiles.size());
+	}
+}
@@ -0,0 +1,65 @@
+package net.tapire_solutions.animationedit.graphicsutils;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class UndoJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static int[] createData(int length, int seed) {
+		int[] data = new int[length];
+		for (int i = 0; i < length; i++) {
+			data[i] = seed * 1000 + i;
+		}
+		return data;
+	}
+
+	private static int[] read(UndoJournal journal, UndoJournal.Entry entry) throws IOException {
+		IntBuffer mapped = journal.map(entry);
+		int[] data = new int[mapped.remaining()];
+		mapped.get(data);
+		return data;
+	}
+
+	@Test
+	public void testReadBackAcrossWindows() throws IOException {
+		File workingDirectory = folder.newFolder("images");
+		// windows of 16 ints
+		UndoJournal journal = new UndoJournal(workingDirectory, 64);
+		List<UndoJournal.Entry> entries = new ArrayList<UndoJournal.Entry>();
+		List<int[]> written = new ArrayList<int[]>();
+		int[] lengths = {5, 7, 6, 16, 3, 40, 9, 1};
+		for (int i = 0; i < lengths.length; i++) {
+			int[] data = createData(lengths[i], i);
+			UndoJournal.Entry entry = journal.append(data);
+			entries.add(entry);
+			written.add(data);
+			if (lengths[i] <= 16) {
+				// entries that fit in a window don't cross into the next one
+				assertEquals(entry.position / 64, (entry.position + lengths[i] * 4 - 1) / 64);
+			}
+			// read while the file grows, the windows are mapped again
+			for (int j = 0; j <= i; j++) {
+				assertArrayEquals(written.get(j), read(journal, entries.get(j)));
+			}
+		}
+
+		// next to the working directory, deleted when closed
+		File[] journalDirectories = folder.getRoot().listFiles();
+		assertEquals(2, journalDirectories.length);
+		journal.close();
+		assertEquals(1, folder.getRoot().listFiles().length);
+		assertEquals(0, workingDirectory.listFiles().length);
+	}
+}